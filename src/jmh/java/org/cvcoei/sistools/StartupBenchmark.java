@@ -0,0 +1,72 @@
+/*
+ * Copyright 2020 California Community Colleges Chancellor's Office
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.cvcoei.sistools;
+
+import org.cvcoei.sistools.csv.logins.LoginsCsvApplication;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.boot.Banner;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the cold start of the logins.csv program when there is nothing to import: booting the Spring
+ * application in a fresh JVM, scanning an empty Colleague input directory, and shutting down again. Every
+ * measurement runs in a new fork, so class loading and JIT warm up are part of the result, the same as for a
+ * scheduled run.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 0)
+@Measurement(iterations = 1)
+@Fork(value = 10, jvmArgsAppend = "-DlogDir=build/tmp/startup-benchmark-logs")
+@State(Scope.Benchmark)
+public class StartupBenchmark {
+
+    @Param({ "true", "false" })
+    boolean lazyInitialization;
+
+    private Path workDirectory;
+
+    @Setup
+    public void setup() throws IOException {
+        workDirectory = Files.createTempDirectory("startup-benchmark");
+        Files.createDirectories(workDirectory.resolve("input"));
+    }
+
+    @Benchmark
+    public int startWithNothingToImport() {
+        SpringApplication application = new SpringApplication(LoginsCsvApplication.class);
+        application.setBannerMode(Banner.Mode.OFF);
+
+        ConfigurableApplicationContext context = application.run(
+            "--spring.main.lazy-initialization=" + lazyInitialization,
+            "--cvc.sis.type=colleague",
+            "--cvc.cross-enrollment.inputDirectory=" + workDirectory.resolve("input"),
+            "--cvc.cross-enrollment.outputFile=" + workDirectory.resolve("output/logins.csv"),
+            "--cvc.canvas.accountId=1",
+            "--cvc.canvas.apiToken=benchmark",
+            "--cvc.canvas.host=localhost");
+
+        return SpringApplication.exit(context);
+    }
+
+}
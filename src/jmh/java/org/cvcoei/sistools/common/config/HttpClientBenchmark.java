@@ -0,0 +1,141 @@
+/*
+ * Copyright 2020 California Community Colleges Chancellor's Office
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.cvcoei.sistools.common.config;
+
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Measures the time to complete a burst of concurrent SIS import status calls against a local MockWebServer
+ * which takes 20 ms to answer each call. Compares the previous client (HTTP/1.1 and OkHttp defaults, which
+ * allow 5 concurrent requests per host) with the client built from the default {@link HttpClientProperties}.
+ * The h2c variant uses HTTP/2 without TLS to show multiplexing many calls over a single connection.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class HttpClientBenchmark {
+
+    private static final String STATUS_RESPONSE =
+        "{\"id\": 1234, \"workflow_state\": \"importing\", \"progress\": 42, \"data\": {\"import_type\": \"instructure_csv\"}}";
+
+    @Param({ "previous", "tuned", "tuned-h2c" })
+    String client;
+
+    @Param({ "100" })
+    int concurrentCalls;
+
+    private MockWebServer server;
+
+    private OkHttpClient httpClient;
+
+    private Request request;
+
+    @Setup
+    public void setup() throws IOException {
+        server = new MockWebServer();
+        server.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest recordedRequest) {
+                return new MockResponse()
+                    .setBody(STATUS_RESPONSE)
+                    .setHeadersDelay(20, TimeUnit.MILLISECONDS);
+            }
+        });
+
+        if(client.equals("tuned-h2c")) {
+            server.setProtocols(Collections.singletonList(Protocol.H2_PRIOR_KNOWLEDGE));
+        }
+
+        server.start();
+
+        switch(client) {
+            case "previous":
+                httpClient = new OkHttpClient.Builder()
+                    .protocols(Collections.singletonList(Protocol.HTTP_1_1))
+                    .build();
+                break;
+            case "tuned":
+                httpClient = new HttpClientConfiguration().httpClient(new HttpClientProperties());
+                break;
+            default:
+                // Cleartext HTTP/2 needs prior knowledge, since protocol negotiation is part of TLS
+                httpClient = new HttpClientConfiguration()
+                    .httpClient(new HttpClientProperties())
+                    .newBuilder()
+                    .protocols(Collections.singletonList(Protocol.H2_PRIOR_KNOWLEDGE))
+                    .build();
+        }
+
+        request = new Request.Builder()
+            .url(server.url("/api/v1/accounts/1/sis_imports/1234"))
+            .build();
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        httpClient.dispatcher().executorService().shutdown();
+        httpClient.connectionPool().evictAll();
+        server.shutdown();
+    }
+
+    @Benchmark
+    public int concurrentStatusCalls() throws InterruptedException {
+        CountDownLatch completed = new CountDownLatch(concurrentCalls);
+        AtomicInteger bytesRead = new AtomicInteger();
+
+        for(int i = 0; i < concurrentCalls; i++) {
+            httpClient.newCall(request).enqueue(new Callback() {
+                @Override
+                public void onFailure(Call call, IOException exception) {
+                    completed.countDown();
+                }
+
+                @Override
+                public void onResponse(Call call, Response response) throws IOException {
+                    try(Response closeableResponse = response) {
+                        bytesRead.addAndGet(closeableResponse.body().string().length());
+                    }
+                    finally {
+                        completed.countDown();
+                    }
+                }
+            });
+        }
+
+        completed.await();
+        return bytesRead.get();
+    }
+
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright 2020 California Community Colleges Chancellor's Office
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.cvcoei.sistools.common.expression;
+
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.expression.MapAccessor;
+import org.springframework.expression.Expression;
+import org.springframework.expression.spel.standard.SpelExpressionParser;
+import org.springframework.expression.spel.support.StandardEvaluationContext;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the cost of evaluating a watch expression against a response map. Compares parsing the expression
+ * and creating a new evaluation context for every evaluation (the previous behavior of polling) with
+ * {@link ExpressionEvalService}, which caches parsed expressions, reuses its context and compiles hot
+ * expressions.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ExpressionEvalBenchmark {
+
+    private static final String WATCH_EXPRESSION =
+        "workflow_state != 'initializing' and workflow_state != 'created' and workflow_state != 'importing'";
+
+    private final SpelExpressionParser interpretedParser = new SpelExpressionParser();
+
+    private final ExpressionEvalService expressionEvalService = new ExpressionEvalService();
+
+    private final Map<String, Object> response = new HashMap<>();
+
+    private Expression interpretedExpression;
+
+    @Setup
+    public void setup() {
+        response.put("id", 1234.0);
+        response.put("workflow_state", "importing");
+        response.put("progress", 42.0);
+
+        interpretedExpression = interpretedParser.parseExpression(WATCH_EXPRESSION);
+    }
+
+    @Benchmark
+    public Object parseAndEvaluate() {
+        StandardEvaluationContext context = new StandardEvaluationContext(response);
+        context.addPropertyAccessor(new MapAccessor());
+        return interpretedParser.parseExpression(WATCH_EXPRESSION).getValue(context);
+    }
+
+    @Benchmark
+    public Object parsedNewContext() {
+        StandardEvaluationContext context = new StandardEvaluationContext(response);
+        context.addPropertyAccessor(new MapAccessor());
+        return interpretedExpression.getValue(context);
+    }
+
+    @Benchmark
+    public Object cachedAndCompiled() {
+        return expressionEvalService.eval(expressionEvalService.parse(WATCH_EXPRESSION), response);
+    }
+
+}
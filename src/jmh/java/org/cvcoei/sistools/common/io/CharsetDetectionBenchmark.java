@@ -0,0 +1,70 @@
+/*
+ * Copyright 2020 California Community Colleges Chancellor's Office
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.cvcoei.sistools.common.io;
+
+import org.cvcoei.sistools.csv.logins.SyntheticCrossEnrollmentData;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.BufferedReader;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures reading a Colleague input file through {@link FileUtilities#getReaderWithCharsetDetection(Path)},
+ * for a UTF-8 file (detected by validating the sample), a UTF-16 file (detected by its byte order mark) and a
+ * windows-1252 file (which falls back to statistical detection with ICU4J). The whole file is read, so the
+ * result also includes decoding in the detected character set.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CharsetDetectionBenchmark {
+
+    @Param({ "10000", "1000000", "10000000" })
+    int rows;
+
+    @Param({ "UTF-8", "UTF-16", "windows-1252" })
+    String charset;
+
+    private Path inputFile;
+
+    @Setup
+    public void setup() throws Exception {
+        inputFile = SyntheticCrossEnrollmentData.writeColleagueFile(
+            Files.createTempFile("charset-benchmark", ".csv"),
+            rows,
+            Charset.forName(charset));
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        Files.deleteIfExists(inputFile);
+    }
+
+    @Benchmark
+    public long detectAndRead() throws Exception {
+        try(ReaderWithCharset readerWithCharset = FileUtilities.getReaderWithCharsetDetection(inputFile)) {
+            return new BufferedReader(readerWithCharset.getReader()).lines().count();
+        }
+    }
+
+}
@@ -0,0 +1,75 @@
+/*
+ * Copyright 2020 California Community Colleges Chancellor's Office
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.cvcoei.sistools.common.json;
+
+import org.cvcoei.sistools.common.canvas.SisImport;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.StringReader;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures decoding a Canvas SIS import status response with {@link JsonService}, both into a generic Map
+ * (used for polling) and bound to {@link SisImport}. The size of the response is driven by the number of
+ * processing warnings Canvas reports for the rows of the import.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+@State(Scope.Benchmark)
+public class JsonServiceBenchmark {
+
+    @Param({ "10000", "1000000", "10000000" })
+    int rows;
+
+    private final JsonService jsonService = new JsonService();
+
+    private String response;
+
+    @Setup
+    public void setup() {
+        // One warning for every thousand rows, as for a mostly clean import
+        StringBuilder json = new StringBuilder()
+            .append("{\"id\": 1234, \"workflow_state\": \"imported_with_messages\", \"progress\": 100, ")
+            .append("\"created_at\": \"2020-10-01T12:00:00Z\", \"ended_at\": \"2020-10-01T12:05:00Z\", ")
+            .append("\"data\": {\"import_type\": \"instructure_csv\", \"supplied_batches\": [\"user\"], ")
+            .append("\"counts\": {\"logins\": ").append(rows).append(", \"users\": 0, \"enrollments\": 0}}, ")
+            .append("\"statistics\": {\"total_state_changes\": ").append(rows).append("}, ")
+            .append("\"processing_warnings\": [");
+
+        for(int i = 0; i < rows / 1000; i++) {
+            json.append(i == 0 ? "" : ", ")
+                .append("[\"logins.csv\", \"Unknown user ").append(50000000 + i * 1000).append("\"]");
+        }
+
+        response = json.append("]}").toString();
+    }
+
+    @Benchmark
+    public Map<String, Object> toMap() {
+        return jsonService.toMap(new StringReader(response));
+    }
+
+    @Benchmark
+    public SisImport fromJson() {
+        return jsonService.fromJson(new StringReader(response), SisImport.class);
+    }
+
+}
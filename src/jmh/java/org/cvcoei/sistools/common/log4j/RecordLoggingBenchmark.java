@@ -0,0 +1,123 @@
+/*
+ * Copyright 2020 California Community Colleges Chancellor's Office
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.cvcoei.sistools.common.log4j;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.apache.logging.log4j.core.async.AsyncLoggerContext;
+import org.apache.logging.log4j.core.jmx.RingBufferAdmin;
+import org.apache.logging.log4j.spi.LoggerContext;
+import org.cvcoei.sistools.csv.logins.CrossEnrollmentRecord;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the time to log one debug line per cross-enrollment record for 1 million records, as the Colleague
+ * record source does at the debug level. Each configuration runs in its own JVM, because the Log4j context
+ * selector is global:
+ * <ul>
+ *     <li>defaultSynchronous - the default log4j2.xml: RollingFile appender with caller class location (%C), flushed
+ *     on every event</li>
+ *     <li>bufferedSynchronous - the appenders of log4j2-async.xml (buffered RollingRandomAccessFile with the logger
+ *     name, %c) with synchronous loggers, to separate the effect of the appenders from that of the async loggers</li>
+ *     <li>asynchronous - the --async-logging mode, including the time for the background thread to catch up</li>
+ *     <li>debugDisabled - cost of the logging call when debug is not enabled</li>
+ * </ul>
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@State(Scope.Benchmark)
+public class RecordLoggingBenchmark {
+
+    private static final String DEFAULT_CONFIGURATION = "-Dlog4j.configurationFile=log4j2-benchmark-default.xml";
+
+    private static final String ASYNC_CONFIGURATION = "-Dlog4j.configurationFile=log4j2-benchmark-async.xml";
+
+    @Param({ "1000000" })
+    int records;
+
+    private final CrossEnrollmentRecord[] sampleRecords = new CrossEnrollmentRecord[1000];
+
+    private Logger log;
+
+    private Logger disabledLog;
+
+    @Setup
+    public void setup() {
+        for(int i = 0; i < sampleRecords.length; i++) {
+            sampleRecords[i] = new CrossEnrollmentRecord(
+                "college" + (i % 115) + ".instructure.com",
+                Integer.toString(50000000 + i),
+                "student" + i + "@my.example.edu",
+                Integer.toString(20000000 + i));
+        }
+
+        log = LogManager.getLogger(RecordLoggingBenchmark.class);
+        disabledLog = LogManager.getLogger("benchmark.disabled");
+    }
+
+    @Benchmark
+    @Fork(value = 1, jvmArgsAppend = DEFAULT_CONFIGURATION)
+    public void defaultSynchronous() {
+        logRecords(log);
+    }
+
+    @Benchmark
+    @Fork(value = 1, jvmArgsAppend = ASYNC_CONFIGURATION)
+    public void bufferedSynchronous() {
+        logRecords(log);
+    }
+
+    @Benchmark
+    @Fork(value = 1, jvmArgsAppend = {
+        ASYNC_CONFIGURATION,
+        "-DLog4jContextSelector=org.apache.logging.log4j.core.async.AsyncLoggerContextSelector" })
+    public void asynchronous() {
+        logRecords(log);
+        awaitAsyncLoggers();
+    }
+
+    @Benchmark
+    @Fork(value = 1, jvmArgsAppend = DEFAULT_CONFIGURATION)
+    public void debugDisabled() {
+        logRecords(disabledLog);
+    }
+
+    private void logRecords(Logger logger) {
+        for(int i = 0; i < records; i++) {
+            logger.debug("Processing cross-enrollment record {}", sampleRecords[i % sampleRecords.length]);
+        }
+    }
+
+    /**
+     * Wait until the async logger ring buffer has been drained by the background thread.
+     */
+    private static void awaitAsyncLoggers() {
+        LoggerContext context = LogManager.getContext(false);
+        if(!(context instanceof AsyncLoggerContext)) {
+            throw new IllegalStateException("Async loggers are not enabled");
+        }
+
+        RingBufferAdmin ringBuffer = ((AsyncLoggerContext) context).createRingBufferAdmin();
+        while(ringBuffer.getRemainingCapacity() < ringBuffer.getBufferSize()) {
+            Thread.yield();
+        }
+    }
+
+}
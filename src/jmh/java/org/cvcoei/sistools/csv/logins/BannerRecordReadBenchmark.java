@@ -0,0 +1,118 @@
+/*
+ * Copyright 2020 California Community Colleges Chancellor's Office
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.cvcoei.sistools.csv.logins;
+
+import org.cvcoei.sistools.common.jdbc.JdbcStreams;
+import org.h2.tools.Server;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import java.net.ServerSocket;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Compares the original Banner read path (JdbcTemplate.queryForList into a Map per row, then copied into a
+ * record) with the streaming path (column-index RowMapper over a forward-only result set) for 100k staging
+ * table rows. H2 runs as a TCP server in Oracle compatibility mode so that each fetch is a real network round
+ * trip, and the fetch size is varied between the Oracle driver default (10 rows) and the configured default
+ * (1000 rows). Run with the gc profiler enabled to compare allocations per operation.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class BannerRecordReadBenchmark {
+
+    private static final String SQL_STAGING_TABLE =
+        "select studentid as \"user_id\", canvasloginid as \"login_id\", homesisuserid as \"existing_user_id\", " +
+        "canvasrootaccount as \"root_account\" from niccrsxchng.n_stag_canvas";
+
+    @Param({ "100000" })
+    int rows;
+
+    @Param({ "10", "1000" })
+    int fetchSize;
+
+    private Server server;
+
+    private DriverManagerDataSource dataSource;
+
+    @Setup
+    public void setup() throws Exception {
+        // Start a local H2 database server on a free port
+        int port;
+        try(ServerSocket socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+
+        server = Server.createTcpServer("-tcpPort", Integer.toString(port), "-ifNotExists").start();
+
+        dataSource = new DriverManagerDataSource(
+            "jdbc:h2:tcp://localhost:" + port + "/mem:banner;MODE=Oracle;DB_CLOSE_DELAY=-1",
+            "sa",
+            "");
+
+        // Create and populate a stand-in for the Banner staging table
+        JdbcTemplate jdbc = new JdbcTemplate(dataSource);
+        jdbc.execute("create schema niccrsxchng");
+        jdbc.execute("create table niccrsxchng.n_stag_canvas (" +
+            "studentid varchar2(50), cccid varchar2(50), termcode varchar2(50), campuscode varchar2(50), " +
+            "canvasrootaccount varchar2(50), homesisuserid varchar2(50), activity_date timestamp, " +
+            "canvasloginid varchar2(50))");
+        jdbc.execute("insert into niccrsxchng.n_stag_canvas " +
+            "(studentid, cccid, canvasrootaccount, homesisuserid, activity_date, canvasloginid) " +
+            "select 20000000 + x, 'ABC' || x, 'college' || mod(x, 115) || '.instructure.com', 50000000 + x, " +
+            "current_timestamp, 'login' || x from system_range(1, " + rows + ")");
+    }
+
+    @TearDown
+    public void tearDown() {
+        server.stop();
+    }
+
+    @Benchmark
+    public void queryForListIntoMaps(Blackhole blackhole) {
+        JdbcTemplate jdbc = new JdbcTemplate(dataSource);
+        jdbc.setFetchSize(fetchSize);
+
+        jdbc
+            .queryForList(SQL_STAGING_TABLE)
+            .forEach(record -> blackhole.consume(new CrossEnrollmentRecord(
+                (String) record.get("root_account"),
+                (String) record.get("existing_user_id"),
+                (String) record.get("login_id"),
+                (String) record.get("user_id"))));
+    }
+
+    @Benchmark
+    public void streamWithRowMapper(Blackhole blackhole) {
+        try(Stream<CrossEnrollmentRecord> records = JdbcStreams.stream(
+            dataSource,
+            SQL_STAGING_TABLE,
+            fetchSize,
+            new CrossEnrollmentRecordRowMapper())) {
+
+            records.forEach(blackhole::consume);
+        }
+    }
+
+}
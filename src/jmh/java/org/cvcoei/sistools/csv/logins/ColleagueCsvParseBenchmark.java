@@ -0,0 +1,115 @@
+/*
+ * Copyright 2020 California Community Colleges Chancellor's Office
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.cvcoei.sistools.csv.logins;
+
+import com.opencsv.bean.CsvToBeanBuilder;
+import org.cvcoei.sistools.common.io.FileUtilities;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Compares parsing a Colleague cross-enrollment input file with OpenCSV annotation based bean binding against
+ * {@link CrossEnrollmentCsvReader}, and measures the complete {@link ColleagueCrossEnrollmentRecordSource}
+ * (file discovery, character set detection, parsing and moving the file once it has been read). Input files
+ * are generated in the setup phase; 10 million rows produce a file of roughly 800 MB.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+@State(Scope.Benchmark)
+public class ColleagueCsvParseBenchmark {
+
+    @Param({ "10000", "1000000", "10000000" })
+    int rows;
+
+    private Path inputDirectory;
+
+    private Path inputFile;
+
+    private ColleagueCrossEnrollmentRecordSource recordSource;
+
+    @Setup
+    public void setup() throws Exception {
+        inputDirectory = Files.createTempDirectory("cross-enrollment-benchmark");
+        inputFile = SyntheticCrossEnrollmentData.writeColleagueFile(
+            inputDirectory.resolve("canvas-benchmark.csv"),
+            rows,
+            StandardCharsets.UTF_8);
+
+        recordSource = new ColleagueCrossEnrollmentRecordSource();
+        recordSource.propertyInputDirectory = inputDirectory.toString();
+        recordSource.propertyInputPattern = "**/canvas*";
+        recordSource.propertyCompletedDirectory = "completed";
+        recordSource.propertyFailedDirectory = "failed";
+        recordSource.parserThreads = 1;
+        recordSource.charsetSampleSize = FileUtilities.DEFAULT_CHARSET_SAMPLE_SIZE;
+    }
+
+    @TearDown(Level.Iteration)
+    public void restoreInputFile() throws Exception {
+        // The record source moves the file into the completed directory once it has been read
+        Path completedFile = inputDirectory.resolve("completed").resolve(inputFile.getFileName());
+        if(Files.exists(completedFile)) {
+            Files.move(completedFile, inputFile, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        Files.deleteIfExists(inputFile);
+        Files.deleteIfExists(inputDirectory.resolve("completed"));
+        Files.deleteIfExists(inputDirectory.resolve("failed"));
+        Files.deleteIfExists(inputDirectory);
+    }
+
+    @Benchmark
+    public void csvToBeanIterator(Blackhole blackhole) throws Exception {
+        try(Reader reader = Files.newBufferedReader(inputFile, StandardCharsets.UTF_8)) {
+            new CsvToBeanBuilder<AnnotatedCrossEnrollmentRecord>(reader)
+                .withType(AnnotatedCrossEnrollmentRecord.class)
+                .build()
+                .iterator()
+                .forEachRemaining(blackhole::consume);
+        }
+    }
+
+    @Benchmark
+    public void crossEnrollmentCsvReader(Blackhole blackhole) throws Exception {
+        try(CrossEnrollmentCsvReader reader = new CrossEnrollmentCsvReader(
+            Files.newBufferedReader(inputFile, StandardCharsets.UTF_8))) {
+
+            reader.forEachRemaining(blackhole::consume);
+        }
+    }
+
+    @Benchmark
+    public void colleagueRecordSource(Blackhole blackhole) throws Exception {
+        try(Stream<CrossEnrollmentRecord> records = recordSource.streamRecords()) {
+            records.forEach(blackhole::consume);
+        }
+    }
+
+}
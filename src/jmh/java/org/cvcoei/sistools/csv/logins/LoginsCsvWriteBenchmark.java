@@ -0,0 +1,93 @@
+/*
+ * Copyright 2020 California Community Colleges Chancellor's Office
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.cvcoei.sistools.csv.logins;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Measures writing logins.csv with {@link LoginsCsvBatchWriter}, as a single file or split into one file per
+ * root account, with and without zip compression. Records are taken from a pool generated in the setup phase,
+ * so that the result does not include creating them.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(1)
+@State(Scope.Benchmark)
+public class LoginsCsvWriteBenchmark {
+
+    private static final int RECORD_POOL_SIZE = 100000;
+
+    @Param({ "10000", "1000000", "10000000" })
+    int rows;
+
+    @Param({ "none", "zip" })
+    String compression;
+
+    @Param({ "false", "true" })
+    boolean byRootAccount;
+
+    private CrossEnrollmentRecord[] recordPool;
+
+    private Path outputDirectory;
+
+    @Setup
+    public void setup() throws Exception {
+        recordPool = SyntheticCrossEnrollmentData
+            .records(RECORD_POOL_SIZE)
+            .toArray(CrossEnrollmentRecord[]::new);
+
+        outputDirectory = Files.createTempDirectory("logins-csv-benchmark");
+    }
+
+    @TearDown(Level.Iteration)
+    public void deleteOutput() throws IOException {
+        try(Stream<Path> files = Files.list(outputDirectory)) {
+            for(Path file : (Iterable<Path>) files::iterator) {
+                Files.delete(file);
+            }
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(outputDirectory);
+    }
+
+    @Benchmark
+    public long writeLoginsCsv() throws IOException {
+        UploadCompression uploadCompression = UploadCompression.fromConfig(compression);
+        Path outputPath = uploadCompression.resolve(outputDirectory.resolve("logins.csv"));
+
+        LoginsCsvBatchWriter batchWriter = new LoginsCsvBatchWriter(outputPath, uploadCompression, 0, byRootAccount);
+        try(LoginsCsvBatchWriter writer = batchWriter) {
+            for(int i = 0; i < rows; i++) {
+                writer.write(recordPool[i % RECORD_POOL_SIZE]);
+            }
+        }
+
+        return batchWriter.getRecordCount();
+    }
+
+}
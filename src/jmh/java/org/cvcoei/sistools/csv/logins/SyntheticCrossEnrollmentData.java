@@ -0,0 +1,93 @@
+/*
+ * Copyright 2020 California Community Colleges Chancellor's Office
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.cvcoei.sistools.csv.logins;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * Generates synthetic cross-enrollment data for benchmarks, shaped like a Colleague export: records spread over
+ * 115 root accounts, numeric SIS IDs and e-mail style logins. Every 50th login contains an accented character,
+ * so that a file written in a single byte character set is not plain ASCII. The same index always produces the
+ * same record, so results are comparable between runs.
+ */
+public class SyntheticCrossEnrollmentData {
+
+    public static final String COLLEAGUE_HEADER = "canvasRootAccount,homeSISUserId,canvasLoginId,studentid";
+
+    /**
+     * @param index Position of the record
+     * @return The synthetic record at the position
+     */
+    public static CrossEnrollmentRecord record(int index) {
+        return new CrossEnrollmentRecord(
+            rootAccount(index),
+            Integer.toString(50000000 + index),
+            login(index),
+            Integer.toString(20000000 + index));
+    }
+
+    /**
+     * @param count Number of records
+     * @return Stream of the first count synthetic records, generated as they are consumed
+     */
+    public static Stream<CrossEnrollmentRecord> records(int count) {
+        return IntStream.range(0, count).mapToObj(SyntheticCrossEnrollmentData::record);
+    }
+
+    /**
+     * Write a Colleague cross-enrollment input file. One million rows produce a file of roughly 80 MB in UTF-8.
+     * @param file File to create or replace
+     * @param rows Number of records
+     * @param charset Character set of the file (UTF-16 is written with a byte order mark)
+     * @return The file
+     * @throws IOException
+     */
+    public static Path writeColleagueFile(Path file, int rows, Charset charset) throws IOException {
+        try(BufferedWriter writer = Files.newBufferedWriter(file, charset)) {
+            writer.write(COLLEAGUE_HEADER);
+            writer.write('\n');
+
+            for(int i = 0; i < rows; i++) {
+                writer.write(rootAccount(i));
+                writer.write(',');
+                writer.write(Integer.toString(50000000 + i));
+                writer.write(",\"");
+                writer.write(login(i));
+                writer.write("\",");
+                writer.write(Integer.toString(20000000 + i));
+                writer.write('\n');
+            }
+        }
+
+        return file;
+    }
+
+    private static String rootAccount(int index) {
+        return "college" + (index % 115) + ".instructure.com";
+    }
+
+    private static String login(int index) {
+        return (index % 50 == 0 ? "josé" : "student") + index + "@my.example.edu";
+    }
+
+}
@@ -20,12 +20,15 @@ import org.cvcoei.sistools.common.log4j.CommandLineLookup;
 import org.cvcoei.sistools.csv.logins.LoginsCsvApplication;
 import org.springframework.boot.Banner;
 import org.springframework.boot.SpringApplication;
+import org.springframework.context.ConfigurableApplicationContext;
 import picocli.CommandLine.Model.ArgGroupSpec;
 import picocli.CommandLine.Model.CommandSpec;
 import picocli.CommandLine.Model.OptionSpec;
 import picocli.CommandLine.ParseResult;
 
 import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Properties;
 
@@ -56,6 +59,21 @@ public class Launcher {
             .builder("--version")
             .build());
 
+        // Define an optional command line argument to send all records regardless of what was previously imported
+        commandSpec.addOption(OptionSpec
+            .builder("--full-resync")
+            .build());
+
+        // Define an optional command line argument to keep running and import input files as they arrive
+        commandSpec.addOption(OptionSpec
+            .builder("--watch")
+            .build());
+
+        // Define an optional command line argument for high-throughput asynchronous logging
+        commandSpec.addOption(OptionSpec
+            .builder("--async-logging")
+            .build());
+
         // Define a group spec for identifying a job program to
         commandSpec.addArgGroup(ArgGroupSpec
             .builder()
@@ -67,6 +85,11 @@ public class Launcher {
         // Configure Log4j command line lookup plugin to parse and recognize specific command line arguments
         ParseResult parseResult = CommandLineLookup.parse(commandSpec, args);
 
+        // Switch Log4j to asynchronous loggers (must be set before the first logger is created)
+        if(parseResult.hasMatchedOption("--async-logging")) {
+            enableAsyncLogging();
+        }
+
         // Check if the program version is requested
         if(parseResult.hasMatchedOption("--version")) {
             // Load version string from embedded properties file
@@ -99,9 +122,37 @@ public class Launcher {
             application.setAdditionalProfiles(requestedProfiles.toArray(new String[0]));
         }
 
-        // Run Spring application
+        // Translate a full resync request into configuration
+        List<String> applicationArgs = new ArrayList<>(Arrays.asList(args));
+        if(parseResult.hasMatchedOption("--full-resync")) {
+            applicationArgs.add("--cvc.cross-enrollment.fullResync=true");
+        }
+
+        // Translate a watch request into configuration
+        if(parseResult.hasMatchedOption("--watch")) {
+            applicationArgs.add("--cvc.cross-enrollment.watch.enabled=true");
+        }
+
+        // Run Spring application, and exit as soon as the job has finished instead of waiting for idle HTTP client
+        // threads to time out (in watch mode the job never finishes)
         application.setBannerMode(Banner.Mode.OFF);
-        application.run(args);
+        ConfigurableApplicationContext context = application.run(applicationArgs.toArray(new String[0]));
+        System.exit(SpringApplication.exit(context));
+    }
+
+    /**
+     * Configure Log4j for high-throughput logging. All loggers hand events to a background thread through an
+     * LMAX disruptor ring buffer, and log4j2-async.xml replaces log4j2.xml, so that files are flushed once per
+     * batch of events instead of after every event, and lines are formatted without allocating.
+     */
+    private static void enableAsyncLogging() {
+        System.setProperty(
+            "Log4jContextSelector",
+            "org.apache.logging.log4j.core.async.AsyncLoggerContextSelector");
+        System.setProperty("log4j.configurationFile", "log4j2-async.xml");
+
+        // Spring Boot initializes logging again once the application starts
+        System.setProperty("logging.config", "classpath:log4j2-async.xml");
     }
 
 }
@@ -0,0 +1,78 @@
+/*
+ * Copyright 2020 California Community Colleges Chancellor's Office
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.cvcoei.sistools.common.canvas;
+
+import com.google.gson.JsonObject;
+import com.google.gson.annotations.SerializedName;
+import lombok.Data;
+
+import java.util.List;
+
+/**
+ * Response object of the Canvas SIS import API, limited to the fields used to track and report an import.
+ * Open-ended objects such as the import counts are kept as raw JSON.
+ *
+ * @see <a href="https://canvas.instructure.com/doc/api/sis_imports.html#SisImport">SisImport object</a>
+ */
+@Data
+public class SisImport {
+
+    private long id;
+
+    @SerializedName("workflow_state")
+    private String workflowState;
+
+    /**
+     * Percentage of the import completed
+     */
+    private Double progress;
+
+    @SerializedName("created_at")
+    private String createdAt;
+
+    @SerializedName("ended_at")
+    private String endedAt;
+
+    /**
+     * Counts of the objects created or updated by the import
+     */
+    private JsonObject data;
+
+    private JsonObject statistics;
+
+    @SerializedName("processing_warnings")
+    private List<List<String>> processingWarnings;
+
+    @SerializedName("processing_errors")
+    private List<List<String>> processingErrors;
+
+    @SerializedName("errors_attachment")
+    private Attachment errorsAttachment;
+
+    @Data
+    public static class Attachment {
+
+        private long id;
+
+        private String filename;
+
+        private String url;
+
+        private long size;
+
+    }
+
+}
@@ -0,0 +1,149 @@
+/*
+ * Copyright 2020 California Community Colleges Chancellor's Office
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.cvcoei.sistools.common.canvas;
+
+import lombok.Getter;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.regex.Pattern;
+
+/**
+ * Compact summary of the errors reported by a Canvas SIS import. Error messages are grouped into classes by
+ * replacing the values they mention (quoted text and numbers) with placeholders, and each class is counted per
+ * root account. Memory use is bounded by the number of distinct classes, regardless of the number of errors.
+ */
+@Getter
+public class SisImportErrorSummary {
+
+    /**
+     * Maximum number of distinct error classes tracked. Further classes are counted together.
+     */
+    static final int MAX_ERROR_CLASSES = 500;
+
+    static final String OTHER_ERROR_CLASS = "(other errors)";
+
+    static final String UNKNOWN_ROOT_ACCOUNT = "(unknown)";
+
+    private static final int MAX_ERROR_CLASS_LENGTH = 200;
+
+    private static final Pattern QUOTED_VALUE = Pattern.compile("\"[^\"]*\"|'[^']*'");
+
+    private static final Pattern NUMBER = Pattern.compile("\\d+");
+
+    private final long importId;
+
+    private long totalErrors;
+
+    /**
+     * Number of errors which do not name the imported row that failed
+     */
+    private long unidentifiedRows;
+
+    private final transient Map<String, ErrorClass> errorClassIndex = new HashMap<>();
+
+    public SisImportErrorSummary(long importId) {
+        this.importId = importId;
+    }
+
+    /**
+     * Count one error.
+     * @param message Error message reported by Canvas
+     * @param rootAccount Root account of the row which failed, or null if unknown
+     */
+    public void add(String message, String rootAccount) {
+        totalErrors++;
+
+        String errorClassName = classify(message);
+        ErrorClass errorClass = errorClassIndex.get(errorClassName);
+
+        if(errorClass == null) {
+            if(errorClassIndex.size() >= MAX_ERROR_CLASSES) {
+                errorClassName = OTHER_ERROR_CLASS;
+                errorClass = errorClassIndex.get(errorClassName);
+            }
+
+            if(errorClass == null) {
+                errorClass = new ErrorClass(errorClassName, message);
+                errorClassIndex.put(errorClassName, errorClass);
+            }
+        }
+
+        errorClass.count++;
+        errorClass.rootAccounts.merge(
+            rootAccount == null || rootAccount.isEmpty() ? UNKNOWN_ROOT_ACCOUNT : rootAccount,
+            1L,
+            Long::sum);
+    }
+
+    /**
+     * Count one error which does not name the imported row that failed.
+     */
+    public void addUnidentifiedRow() {
+        unidentifiedRows++;
+    }
+
+    /**
+     * @return Error classes, most frequent first
+     */
+    public List<ErrorClass> getErrorClasses() {
+        List<ErrorClass> errorClasses = new ArrayList<>(errorClassIndex.values());
+        errorClasses.sort(Comparator.comparingLong(ErrorClass::getCount).reversed());
+        return errorClasses;
+    }
+
+    /**
+     * Reduce an error message to its class by replacing quoted values and numbers with placeholders.
+     * @param message Error message
+     * @return Error class
+     */
+    static String classify(String message) {
+        if(message == null) {
+            return "";
+        }
+
+        String errorClass = NUMBER.matcher(QUOTED_VALUE.matcher(message.trim()).replaceAll("\"?\"")).replaceAll("#");
+        return errorClass.length() > MAX_ERROR_CLASS_LENGTH
+            ? errorClass.substring(0, MAX_ERROR_CLASS_LENGTH)
+            : errorClass;
+    }
+
+    @Getter
+    public static class ErrorClass {
+
+        private final String errorClass;
+
+        /**
+         * First message seen in this class
+         */
+        private final String sampleMessage;
+
+        private long count;
+
+        private final Map<String, Long> rootAccounts = new TreeMap<>();
+
+        ErrorClass(String errorClass, String sampleMessage) {
+            this.errorClass = errorClass;
+            this.sampleMessage = sampleMessage;
+        }
+
+    }
+
+}
@@ -0,0 +1,296 @@
+/*
+ * Copyright 2020 California Community Colleges Chancellor's Office
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.cvcoei.sistools.common.canvas;
+
+import com.opencsv.CSVParser;
+import lombok.extern.log4j.Log4j2;
+import okhttp3.Request;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.cvcoei.sistools.common.http.HttpApiService;
+import org.cvcoei.sistools.common.json.JsonService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Spring service to download the errors attachment of a Canvas SIS import, and process it as a stream.
+ * Each error is counted into a {@link SisImportErrorSummary}, and the raw file is saved gzip compressed.
+ * Only the summary is written to the SIS import errors log, instead of every error row.
+ */
+@Log4j2
+@Service
+public class SisImportErrorsService {
+
+    /**
+     * Number of error classes listed in the errors log (all classes are written to the summary file)
+     */
+    static final int LOGGED_ERROR_CLASSES = 20;
+
+    private final Logger sisErrorsLog = LogManager.getLogger("canvas.sis-import.errors");
+
+    @Autowired
+    HttpApiService httpApiService;
+
+    @Autowired
+    JsonService jsonService;
+
+    /**
+     * Download and summarize the errors attachment of an SIS import.
+     * @see #process(long, SisImport.Attachment, Path, int, Consumer)
+     */
+    public Mono<SisImportErrorSummary> process(
+            long importId,
+            SisImport.Attachment attachment,
+            Path outputDirectory,
+            int rootAccountColumn) {
+        return process(importId, attachment, outputDirectory, rootAccountColumn, row -> {});
+    }
+
+    /**
+     * Download and summarize the errors attachment of an SIS import. The download is processed on a
+     * background thread as it arrives, and the following files are written to the output directory:
+     * <ul>
+     *     <li>canvas_sis_import_errors_{id}.json - summary of the errors</li>
+     *     <li>canvas_sis_import_errors_{id}.csv.gz - compressed copy of the errors attachment</li>
+     * </ul>
+     * @param importId ID of the SIS import
+     * @param attachment The errors attachment of the import
+     * @param outputDirectory Directory to write the files to
+     * @param rootAccountColumn Index of the root account column in the imported CSV file, or -1 if there is none
+     * @param failedRowConsumer Receives the values of each imported CSV row named by an error (called on a
+     *                          background thread). Errors which do not name a row are counted in the summary.
+     * @return Mono of the summary, which completes once both files have been written
+     */
+    public Mono<SisImportErrorSummary> process(
+            long importId,
+            SisImport.Attachment attachment,
+            Path outputDirectory,
+            int rootAccountColumn,
+            Consumer<String[]> failedRowConsumer) {
+        Request downloadRequest = new Request.Builder()
+            .url(attachment.getUrl())
+            .build();
+
+        Path rawOutputFile = outputDirectory.resolve("canvas_sis_import_errors_" + importId + ".csv.gz");
+        Path summaryOutputFile = outputDirectory.resolve("canvas_sis_import_errors_" + importId + ".json");
+
+        return Mono.using(
+            () -> new BufferedWriter(new OutputStreamWriter(
+                new GZIPOutputStream(Files.newOutputStream(rawOutputFile)),
+                StandardCharsets.UTF_8)),
+            rawWriter -> {
+                ErrorRowParser rowParser = new ErrorRowParser(
+                    new SisImportErrorSummary(importId),
+                    rootAccountColumn,
+                    failedRowConsumer);
+
+                return httpApiService
+                    .fetchLinesAsync(downloadRequest)
+                    .publishOn(Schedulers.boundedElastic())
+                    .doOnNext(line -> {
+                        writeLine(rawWriter, line);
+                        rowParser.parse(line);
+                    })
+                    .then(Mono.fromCallable(rowParser::getSummary));
+            },
+            rawWriter -> close(rawWriter))
+
+        .doOnNext(summary -> {
+            writeSummary(summary, summaryOutputFile);
+            logSummary(summary, summaryOutputFile, rawOutputFile);
+        });
+    }
+
+    private void writeSummary(SisImportErrorSummary summary, Path summaryOutputFile) {
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("importId", summary.getImportId());
+        report.put("totalErrors", summary.getTotalErrors());
+        report.put("errorClasses", summary.getErrorClasses());
+
+        try {
+            Files.write(
+                summaryOutputFile,
+                Collections.singletonList(jsonService.toJsonPretty(report)),
+                StandardCharsets.UTF_8);
+        }
+        catch(IOException ioException) {
+            // Rethrow as unchecked exception
+            throw new RuntimeException(ioException);
+        }
+    }
+
+    private void logSummary(SisImportErrorSummary summary, Path summaryOutputFile, Path rawOutputFile) {
+        List<SisImportErrorSummary.ErrorClass> errorClasses = summary.getErrorClasses();
+
+        sisErrorsLog.error(
+            "Canvas SIS import {} reported {} errors in {} classes (summary {}, full list {})",
+            summary.getImportId(),
+            summary.getTotalErrors(),
+            errorClasses.size(),
+            summaryOutputFile,
+            rawOutputFile);
+
+        errorClasses.stream().limit(LOGGED_ERROR_CLASSES).forEach(errorClass -> sisErrorsLog.error(
+            "  {} x {} by root account {}",
+            errorClass.getCount(),
+            errorClass.getSampleMessage(),
+            errorClass.getRootAccounts()));
+    }
+
+    private static void writeLine(Writer writer, String line) {
+        try {
+            writer.write(line);
+            writer.write('\n');
+        }
+        catch(IOException ioException) {
+            // Rethrow as unchecked exception
+            throw new RuntimeException(ioException);
+        }
+    }
+
+    private static void close(Writer writer) {
+        try {
+            writer.close();
+        }
+        catch(IOException ioException) {
+            log.warn("Failed to close SIS import errors file", ioException);
+        }
+    }
+
+    /**
+     * Parses the lines of an errors attachment (sis_import_id, file, message, row, row_info) into the summary.
+     * Quoted values may span several lines. The original CSV row in row_info is passed to the failed row
+     * consumer, and its root account is counted in the summary.
+     */
+    static class ErrorRowParser {
+
+        private final CSVParser csvParser = new CSVParser();
+        private final SisImportErrorSummary summary;
+        private final int rootAccountColumn;
+        private final Consumer<String[]> failedRowConsumer;
+
+        private String[] pendingFields;
+        private int messageColumn = -1;
+        private int rowInfoColumn = -1;
+
+        ErrorRowParser(SisImportErrorSummary summary, int rootAccountColumn, Consumer<String[]> failedRowConsumer) {
+            this.summary = summary;
+            this.rootAccountColumn = rootAccountColumn;
+            this.failedRowConsumer = failedRowConsumer;
+        }
+
+        void parse(String line) {
+            String[] fields;
+
+            try {
+                fields = csvParser.parseLineMulti(line);
+            }
+            catch(IOException exception) {
+                // Count lines which cannot be parsed as they are
+                summary.add(line, null);
+                summary.addUnidentifiedRow();
+                return;
+            }
+
+            // Join the fields of a value spanning several lines
+            if(pendingFields != null) {
+                String[] joined = Arrays.copyOf(pendingFields, pendingFields.length + fields.length);
+                System.arraycopy(fields, 0, joined, pendingFields.length, fields.length);
+                fields = joined;
+            }
+
+            if(csvParser.isPending()) {
+                pendingFields = fields;
+                return;
+            }
+
+            pendingFields = null;
+
+            // Find the columns in the header
+            if(messageColumn < 0) {
+                List<String> header = Arrays.asList(fields);
+                messageColumn = header.indexOf("message");
+                rowInfoColumn = header.indexOf("row_info");
+
+                if(messageColumn >= 0) {
+                    return;
+                }
+
+                // Without a header, count each line as a message
+                messageColumn = Integer.MAX_VALUE;
+            }
+
+            String message = messageColumn < fields.length ? fields[messageColumn] : String.join(",", fields);
+            String[] row = failedRow(fields);
+
+            if(row != null) {
+                failedRowConsumer.accept(row);
+            }
+            else {
+                summary.addUnidentifiedRow();
+            }
+
+            summary.add(message, rootAccount(row));
+        }
+
+        SisImportErrorSummary getSummary() {
+            return summary;
+        }
+
+        /**
+         * @return Values of the imported CSV row in row_info, or null if the error does not name a row
+         */
+        private String[] failedRow(String[] fields) {
+            if(rowInfoColumn < 0 || rowInfoColumn >= fields.length || fields[rowInfoColumn].trim().isEmpty()) {
+                return null;
+            }
+
+            try {
+                return new CSVParser().parseLine(fields[rowInfoColumn]);
+            }
+            catch(IOException exception) {
+                return null;
+            }
+        }
+
+        private String rootAccount(String[] row) {
+            if(row == null || rootAccountColumn < 0 || rootAccountColumn >= row.length) {
+                return null;
+            }
+
+            return row[rootAccountColumn].trim();
+        }
+
+    }
+
+}
@@ -13,27 +13,58 @@
  * See the License for the specific language governing permissions and
  * limitations under the License.
  */
-
 package org.cvcoei.sistools.common.config;
 
+import okhttp3.ConnectionPool;
+import okhttp3.Dispatcher;
 import okhttp3.OkHttpClient;
 import okhttp3.Protocol;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Configures Spring beans for HTTP requests.
  */
-@Configuration
+@Configuration(proxyBeanMethods = false)
+@EnableConfigurationProperties({ HttpClientProperties.class, PollingProperties.class })
 public class HttpClientConfiguration {
 
     @Bean
-    OkHttpClient httpClient() {
-        return new OkHttpClient.Builder()
-            .protocols(Collections.singletonList(Protocol.HTTP_1_1))
-            .build();
+    OkHttpClient httpClient(HttpClientProperties properties) {
+        // Limit concurrent asynchronous requests
+        Dispatcher dispatcher = new Dispatcher();
+        dispatcher.setMaxRequests(properties.getDispatcher().getMaxRequests());
+        dispatcher.setMaxRequestsPerHost(properties.getDispatcher().getMaxRequestsPerHost());
+
+        OkHttpClient.Builder builder = new OkHttpClient.Builder()
+            .protocols(properties.isHttp2()
+                ? Arrays.asList(Protocol.HTTP_2, Protocol.HTTP_1_1)
+                : Collections.singletonList(Protocol.HTTP_1_1))
+            .connectionPool(new ConnectionPool(
+                properties.getPool().getMaxIdleConnections(),
+                properties.getPool().getKeepAlive().toMillis(),
+                TimeUnit.MILLISECONDS))
+            .dispatcher(dispatcher)
+            .connectTimeout(properties.getConnectTimeout())
+            .readTimeout(properties.getReadTimeout())
+            .writeTimeout(properties.getWriteTimeout())
+            .callTimeout(properties.getCallTimeout());
+
+        // OkHttp asks for gzip responses by default, so opting out means asking for uncompressed responses
+        if(!properties.isCompression()) {
+            builder.addInterceptor(chain -> chain.proceed(chain
+                .request()
+                .newBuilder()
+                .header("Accept-Encoding", "identity")
+                .build()));
+        }
+
+        return builder.build();
     }
 
 }
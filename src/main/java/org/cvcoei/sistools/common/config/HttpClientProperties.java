@@ -0,0 +1,101 @@
+/*
+ * Copyright 2020 California Community Colleges Chancellor's Office
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.cvcoei.sistools.common.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+/**
+ * Typed configuration for the shared HTTP client used to call the Canvas APIs, bound from the `cvc.http`
+ * configuration block.
+ */
+@Data
+@ConfigurationProperties(prefix = "cvc.http")
+public class HttpClientProperties {
+
+    /**
+     * Allow HTTP/2 when the server supports it (HTTP/1.1 is always available as a fallback)
+     */
+    private boolean http2 = true;
+
+    /**
+     * Ask the server for gzip compressed responses, which are decompressed transparently
+     */
+    private boolean compression = true;
+
+    /**
+     * Maximum time to establish a connection
+     */
+    private Duration connectTimeout = Duration.ofSeconds(10);
+
+    /**
+     * Maximum time to wait for data while reading a response
+     */
+    private Duration readTimeout = Duration.ofSeconds(60);
+
+    /**
+     * Maximum time to wait while writing a request, such as a large file upload
+     */
+    private Duration writeTimeout = Duration.ofSeconds(60);
+
+    /**
+     * Maximum time for a complete call, or zero for no limit
+     */
+    private Duration callTimeout = Duration.ZERO;
+
+    /**
+     * Connection pool settings
+     */
+    private Pool pool = new Pool();
+
+    /**
+     * Limits on concurrent asynchronous requests
+     */
+    private Dispatcher dispatcher = new Dispatcher();
+
+    @Data
+    public static class Pool {
+
+        /**
+         * Maximum number of idle connections kept open
+         */
+        private int maxIdleConnections = 8;
+
+        /**
+         * How long an idle connection is kept open
+         */
+        private Duration keepAlive = Duration.ofMinutes(5);
+
+    }
+
+    @Data
+    public static class Dispatcher {
+
+        /**
+         * Maximum number of requests in progress at the same time
+         */
+        private int maxRequests = 64;
+
+        /**
+         * Maximum number of requests in progress to the same host at the same time
+         */
+        private int maxRequestsPerHost = 16;
+
+    }
+
+}
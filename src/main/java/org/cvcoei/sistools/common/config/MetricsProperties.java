@@ -0,0 +1,39 @@
+/*
+ * Copyright 2020 California Community Colleges Chancellor's Office
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.cvcoei.sistools.common.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * Typed configuration for exporting run metrics, bound from the `cvc.metrics` configuration block.
+ */
+@Data
+@ConfigurationProperties(prefix = "cvc.metrics")
+public class MetricsProperties {
+
+    /**
+     * Write metrics to the export file at the end of each import
+     */
+    private boolean enabled = false;
+
+    /**
+     * File which receives the metrics in the Prometheus text format (replaced on every export)
+     */
+    private String exportFile = "metrics/sis-tools.prom";
+
+}
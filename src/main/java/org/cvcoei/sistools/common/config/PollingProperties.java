@@ -0,0 +1,84 @@
+/*
+ * Copyright 2020 California Community Colleges Chancellor's Office
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.cvcoei.sistools.common.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+/**
+ * Typed configuration for polling an API until a long running job finishes, bound from the `cvc.polling`
+ * configuration block.
+ */
+@Data
+@ConfigurationProperties(prefix = "cvc.polling")
+public class PollingProperties {
+
+    /**
+     * Delay before the second request (the first request is sent immediately)
+     */
+    private Duration initialInterval = Duration.ofSeconds(2);
+
+    /**
+     * Longest delay between two requests
+     */
+    private Duration maxInterval = Duration.ofSeconds(60);
+
+    /**
+     * Factor the delay grows by after each request
+     */
+    private double multiplier = 2.0;
+
+    /**
+     * Fraction of the delay randomly added or removed, so that parallel polls do not line up
+     */
+    private double jitter = 0.2;
+
+    /**
+     * Maximum number of requests before giving up, after which the last response is returned
+     */
+    private int maxAttempts = 100;
+
+    /**
+     * Maximum time to poll before failing
+     */
+    private Duration timeout = Duration.ofMinutes(30);
+
+    /**
+     * Numeric response field with the percentage of the job completed, used to estimate when the job will
+     * finish. Leave empty to only use exponential backoff.
+     */
+    private String progressField = "progress";
+
+    /**
+     * Create a policy which polls at a fixed interval, keeping the attempt limit and timeout of this policy.
+     * @param interval Delay between requests
+     * @return New polling properties
+     */
+    public PollingProperties withFixedInterval(Duration interval) {
+        PollingProperties fixed = new PollingProperties();
+        fixed.setInitialInterval(interval);
+        fixed.setMaxInterval(interval);
+        fixed.setMultiplier(1.0);
+        fixed.setJitter(0.0);
+        fixed.setMaxAttempts(maxAttempts);
+        fixed.setTimeout(timeout);
+        fixed.setProgressField(null);
+        return fixed;
+    }
+
+}
@@ -0,0 +1,41 @@
+/*
+ * Copyright 2020 California Community Colleges Chancellor's Office
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.cvcoei.sistools.common.config;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import javax.sql.DataSource;
+
+/**
+ * Configures the datasource for the SIS database of the current job. The connection pool itself comes from the
+ * {@link SisDataSourceRegistry}, so that it can be shared with other jobs reading from the same database. Only
+ * active when an SIS database URL is configured.
+ */
+@Configuration(proxyBeanMethods = false)
+@ConditionalOnProperty("cvc.sis.url")
+@EnableConfigurationProperties(SisDataSourceProperties.class)
+public class SisDataSourceConfiguration {
+
+    // The registry owns the pool and closes it, so it must outlive this context
+    @Bean(destroyMethod = "")
+    DataSource sisDataSource(SisDataSourceProperties properties, SisDataSourceRegistry sisDataSourceRegistry) {
+        return sisDataSourceRegistry.getDataSource(properties);
+    }
+
+}
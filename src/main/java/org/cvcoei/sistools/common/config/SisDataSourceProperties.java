@@ -0,0 +1,91 @@
+/*
+ * Copyright 2020 California Community Colleges Chancellor's Office
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.cvcoei.sistools.common.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+/**
+ * Typed configuration for connecting to an SIS database (Banner or PeopleSoft), bound from the `cvc.sis`
+ * configuration block.
+ */
+@Data
+@ConfigurationProperties(prefix = "cvc.sis")
+public class SisDataSourceProperties {
+
+    /**
+     * JDBC URL of the SIS database
+     */
+    private String url;
+
+    /**
+     * Username to connect as
+     */
+    private String user;
+
+    /**
+     * Credential to authenticate
+     */
+    private String password;
+
+    /**
+     * Connection pool settings
+     */
+    private Pool pool = new Pool();
+
+    @Data
+    public static class Pool {
+
+        /**
+         * Maximum number of open connections to the SIS database
+         */
+        private int maximumSize = 4;
+
+        /**
+         * Minimum number of idle connections kept open in the pool
+         */
+        private int minimumIdle = 1;
+
+        /**
+         * Maximum time to wait for a connection from the pool before failing
+         */
+        private Duration connectionTimeout = Duration.ofSeconds(30);
+
+        /**
+         * Maximum time to wait for a connection to be validated
+         */
+        private Duration validationTimeout = Duration.ofSeconds(5);
+
+        /**
+         * Optional query used to validate connections (the JDBC4 isValid() check is used when empty)
+         */
+        private String validationQuery;
+
+        /**
+         * Open the minimum number of idle connections at startup, rather than on first use
+         */
+        private boolean warmUp = false;
+
+        /**
+         * Register JMX MBeans for the pool, so that it can be inspected and managed from a JMX console
+         */
+        private boolean registerMbeans = false;
+
+    }
+
+}
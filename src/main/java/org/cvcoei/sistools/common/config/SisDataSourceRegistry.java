@@ -0,0 +1,196 @@
+/*
+ * Copyright 2020 California Community Colleges Chancellor's Office
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.cvcoei.sistools.common.config;
+
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.log4j.Log4j2;
+import org.cvcoei.sistools.common.jdbc.DataSourcePoolMetrics;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.core.env.ConfigurableEnvironment;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import java.io.Closeable;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Creates pooled datasources for SIS databases, so that connections are reused across queries instead of
+ * paying for a new physical connection (and TNS handshake) every time. Pools are shared by SIS URL and user,
+ * so several Canvas accounts which read from the same SIS database also share one pool. The settings of the
+ * first request for a database are used to configure its pool. Pool statistics are published to the metrics
+ * registry. All pools are closed with the registry.
+ *
+ * The registry is created when the application starts, even though other beans are created lazily, so that pools
+ * configured to warm up are opened before the first import starts.
+ */
+@Log4j2
+@Service
+@Lazy(false)
+public class SisDataSourceRegistry implements Closeable {
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private ConfigurableEnvironment environment;
+
+    private final Map<String, HikariDataSource> dataSources = new LinkedHashMap<>();
+
+    /**
+     * Get the pooled datasource for an SIS database, creating the pool on first use.
+     * @param properties Connection settings of the SIS database
+     * @return The shared datasource
+     */
+    public synchronized HikariDataSource getDataSource(SisDataSourceProperties properties) {
+        String key = properties.getUser() + "@" + properties.getUrl();
+
+        HikariDataSource dataSource = dataSources.get(key);
+        if(dataSource == null) {
+            String poolName = dataSources.isEmpty() ? "sis" : "sis-" + (dataSources.size() + 1);
+
+            dataSource = createDataSource(properties, poolName, new DataSourcePoolMetrics(meterRegistry));
+            dataSources.put(key, dataSource);
+        }
+
+        return dataSource;
+    }
+
+    /**
+     * Create the pools which are configured to warm up, for the shared configuration or for each tenant. A pool
+     * which fails to warm up is not kept, so that it is created again (and the error reported) by the import
+     * which uses it.
+     */
+    @PostConstruct
+    void warmUpConfiguredPools() {
+        Set<String> tenantNames = TenantEnvironments.getTenantNames(environment);
+        if(tenantNames.isEmpty()) {
+            warmUpConfiguredPool(environment);
+        }
+
+        for(String tenantName : tenantNames) {
+            warmUpConfiguredPool(TenantEnvironments.createTenantEnvironment(
+                environment,
+                tenantName,
+                TenantEnvironments.getTenantProperties(environment, tenantName)));
+        }
+    }
+
+    private void warmUpConfiguredPool(ConfigurableEnvironment configuration) {
+        SisDataSourceProperties properties = Binder
+            .get(configuration)
+            .bind("cvc.sis", SisDataSourceProperties.class)
+            .orElse(null);
+
+        if(properties == null || properties.getUrl() == null || !properties.getPool().isWarmUp()) {
+            return;
+        }
+
+        try {
+            getDataSource(properties);
+        }
+        catch(RuntimeException exception) {
+            log.warn("Failed to warm up SIS connection pool for {} at startup", properties.getUrl(), exception);
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        dataSources.values().forEach(HikariDataSource::close);
+        dataSources.clear();
+    }
+
+    private HikariDataSource createDataSource(
+            SisDataSourceProperties properties,
+            String poolName,
+            DataSourcePoolMetrics poolMetrics) {
+        SisDataSourceProperties.Pool pool = properties.getPool();
+
+        // Configure connection pool
+        HikariConfig config = new HikariConfig();
+        config.setPoolName(poolName);
+        config.setJdbcUrl(properties.getUrl());
+        config.setUsername(properties.getUser());
+        config.setPassword(properties.getPassword());
+        config.setMaximumPoolSize(pool.getMaximumSize());
+        config.setMinimumIdle(pool.getMinimumIdle());
+        config.setConnectionTimeout(pool.getConnectionTimeout().toMillis());
+        config.setValidationTimeout(pool.getValidationTimeout().toMillis());
+        config.setConnectionTestQuery(pool.getValidationQuery());
+        config.setReadOnly(true);
+        config.setRegisterMbeans(pool.isRegisterMbeans());
+        config.setMetricsTrackerFactory(poolMetrics);
+
+        HikariDataSource dataSource = new HikariDataSource(config);
+        log.debug("Created SIS connection pool {} for {}", poolName, properties.getUrl());
+
+        // Optionally open the minimum number of connections up front
+        if(pool.isWarmUp()) {
+            try {
+                warmUp(dataSource, pool.getMinimumIdle());
+            }
+            catch(RuntimeException exception) {
+                dataSource.close();
+                throw exception;
+            }
+
+            log.info("Warmed up SIS connection pool {}", poolName);
+        }
+
+        return dataSource;
+    }
+
+    /**
+     * Check out a number of connections at the same time and return them to the pool, so that each has been
+     * physically opened and validated before the first query runs.
+     * @param dataSource The pooled datasource
+     * @param connectionCount How many connections to open
+     */
+    private void warmUp(HikariDataSource dataSource, int connectionCount) {
+        List<Connection> connections = new ArrayList<>();
+
+        try {
+            for(int i = 0; i < connectionCount; i++) {
+                connections.add(dataSource.getConnection());
+            }
+        }
+        catch(SQLException sqlException) {
+            // Rethrow as unchecked exception
+            throw new RuntimeException(sqlException);
+        }
+        finally {
+            for(Connection connection : connections) {
+                try {
+                    connection.close();
+                }
+                catch(SQLException sqlException) {
+                    log.warn("Failed to return connection to the pool after warm up", sqlException);
+                }
+            }
+        }
+    }
+
+}
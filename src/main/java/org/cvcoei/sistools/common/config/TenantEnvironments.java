@@ -0,0 +1,146 @@
+/*
+ * Copyright 2020 California Community Colleges Chancellor's Office
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.cvcoei.sistools.common.config;
+
+import org.springframework.boot.context.properties.source.ConfigurationPropertySources;
+import org.springframework.boot.convert.ApplicationConversionService;
+import org.springframework.core.env.*;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Builds the configuration of tenants, where each tenant is one Canvas account processed in the same run. A
+ * tenant is declared with a `cvc.tenants.NAME` block, holding only the `cvc` properties which differ from the
+ * shared configuration:
+ * <pre>
+ * cvc:
+ *   tenants:
+ *     college-a:
+ *       canvas:
+ *         host: college-a.instructure.com
+ * </pre>
+ * is seen by the tenant as `cvc.canvas.host`, and every other property is inherited.
+ */
+public class TenantEnvironments {
+
+    private static final String TENANTS_PREFIX = "cvc.tenants.";
+
+    /**
+     * Find the names of the configured tenants.
+     * @param environment Shared environment
+     * @return Tenant names in alphabetical order, or an empty set if no tenants are configured
+     */
+    public static Set<String> getTenantNames(ConfigurableEnvironment environment) {
+        Set<String> tenantNames = new TreeSet<>();
+
+        for(String propertyName : getPropertyNames(environment)) {
+            if(propertyName.startsWith(TENANTS_PREFIX)) {
+                String tenantPath = propertyName.substring(TENANTS_PREFIX.length());
+                int separator = tenantPath.indexOf('.');
+
+                if(separator > 0) {
+                    tenantNames.add(tenantPath.substring(0, separator));
+                }
+            }
+        }
+
+        return tenantNames;
+    }
+
+    /**
+     * Collect the properties declared for one tenant, renamed to the `cvc` properties they override. When a
+     * property is declared in several places, the usual precedence applies (for example command line arguments
+     * win over configuration files).
+     * @param environment Shared environment
+     * @param tenantName Name of the tenant
+     * @return Overriding properties by name
+     */
+    public static Map<String, Object> getTenantProperties(ConfigurableEnvironment environment, String tenantName) {
+        String tenantPrefix = TENANTS_PREFIX + tenantName + ".";
+        Map<String, Object> tenantProperties = new LinkedHashMap<>();
+
+        for(PropertySource<?> propertySource : environment.getPropertySources()) {
+            if(!(propertySource instanceof EnumerablePropertySource)) {
+                continue;
+            }
+
+            for(String propertyName : ((EnumerablePropertySource<?>) propertySource).getPropertyNames()) {
+                if(propertyName.startsWith(tenantPrefix)) {
+                    tenantProperties.putIfAbsent(
+                        "cvc." + propertyName.substring(tenantPrefix.length()),
+                        propertySource.getProperty(propertyName));
+                }
+            }
+        }
+
+        return tenantProperties;
+    }
+
+    /**
+     * Create the environment of a tenant, which resolves properties from the tenant overrides first and then
+     * from the shared environment.
+     * @param environment Shared environment
+     * @param tenantName Name of the tenant
+     * @param tenantProperties Properties overridden by the tenant
+     * @return New environment for the tenant
+     */
+    public static ConfigurableEnvironment createTenantEnvironment(
+            ConfigurableEnvironment environment,
+            String tenantName,
+            Map<String, Object> tenantProperties) {
+        StandardEnvironment tenantEnvironment = new StandardEnvironment();
+        tenantEnvironment.setConversionService(new ApplicationConversionService());
+        tenantEnvironment.setActiveProfiles(environment.getActiveProfiles());
+
+        // Replace the default sources with the shared sources, keeping their order
+        MutablePropertySources propertySources = tenantEnvironment.getPropertySources();
+        propertySources.forEach(propertySource -> propertySources.remove(propertySource.getName()));
+
+        for(PropertySource<?> propertySource : environment.getPropertySources()) {
+            if(!propertySource.getName().equals("configurationProperties")) {
+                propertySources.addLast(propertySource);
+            }
+        }
+
+        // Expose the tenant name, for example to tag metrics
+        Map<String, Object> properties = new LinkedHashMap<>(tenantProperties);
+        properties.put("cvc.tenant", tenantName);
+        propertySources.addFirst(new MapPropertySource("tenant:" + tenantName, properties));
+
+        // Support relaxed property names the same way Spring Boot does for the shared environment
+        ConfigurationPropertySources.attach(tenantEnvironment);
+        return tenantEnvironment;
+    }
+
+    private static Set<String> getPropertyNames(ConfigurableEnvironment environment) {
+        Set<String> propertyNames = new TreeSet<>();
+
+        for(PropertySource<?> propertySource : environment.getPropertySources()) {
+            if(propertySource instanceof EnumerablePropertySource) {
+                for(String propertyName : ((EnumerablePropertySource<?>) propertySource).getPropertyNames()) {
+                    propertyNames.add(propertyName);
+                }
+            }
+        }
+
+        return propertyNames;
+    }
+
+}
@@ -13,34 +13,78 @@
  * See the License for the specific language governing permissions and
  * limitations under the License.
  */
-
 package org.cvcoei.sistools.common.expression;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import org.springframework.context.expression.MapAccessor;
+import org.springframework.expression.EvaluationContext;
 import org.springframework.expression.Expression;
+import org.springframework.expression.spel.SpelCompilerMode;
+import org.springframework.expression.spel.SpelParserConfiguration;
 import org.springframework.expression.spel.standard.SpelExpressionParser;
 import org.springframework.expression.spel.support.StandardEvaluationContext;
 import org.springframework.stereotype.Service;
 
-import java.util.Map;
 
 /**
  * Spring service to provide expression parsing and helper methods to apply expressions throughout
  * an application.
+ *
+ * Parsed expressions are cached, and compiled to bytecode once they have been evaluated often enough
+ * (SpEL mixed compiler mode), so that expressions used in polling loops or record filters are cheap to
+ * evaluate repeatedly.
  */
 @Service
 public class ExpressionEvalService {
 
-    private final SpelExpressionParser expressionParser = new SpelExpressionParser();
+    /**
+     * Maximum number of parsed expressions kept in the cache (least recently used are evicted first)
+     */
+    static final int MAX_CACHED_EXPRESSIONS = 256;
+
+    private final SpelExpressionParser expressionParser = new SpelExpressionParser(
+        new SpelParserConfiguration(SpelCompilerMode.MIXED, ExpressionEvalService.class.getClassLoader()));
+
+    private final Cache<String, Expression> expressionCache = CacheBuilder
+        .newBuilder()
+        .maximumSize(MAX_CACHED_EXPRESSIONS)
+        .build();
+
+    /**
+     * Shared evaluation context. It only holds the property accessor for maps, and the evaluated object is
+     * passed as the root object of each evaluation, so the context can be reused across threads.
+     */
+    private final EvaluationContext evaluationContext = createEvaluationContext();
 
     public Expression parse(String expression) {
-        return expressionParser.parseExpression(expression);
+        Expression parsedExpression = expressionCache.getIfPresent(expression);
+
+        // Parse on first use (a concurrent parse of the same expression is harmless)
+        if(parsedExpression == null) {
+            parsedExpression = expressionParser.parseExpression(expression);
+            expressionCache.put(expression, parsedExpression);
+        }
+
+        return parsedExpression;
+    }
+
+    /**
+     * Evaluate an expression against a root object. Properties of the expression refer to keys when the
+     * root object is a Map, and to bean properties otherwise.
+     */
+    public Object eval(Expression expression, Object root) {
+        return expression.getValue(evaluationContext, root);
+    }
+
+    public Object eval(String expression, Object root) {
+        return eval(parse(expression), root);
     }
 
-    public Object eval(Expression expression, Map properties) {
-        StandardEvaluationContext context = new StandardEvaluationContext(properties);
+    private static EvaluationContext createEvaluationContext() {
+        StandardEvaluationContext context = new StandardEvaluationContext();
         context.addPropertyAccessor(new MapAccessor());
-        return expression.getValue(context);
+        return context;
     }
 
 }
@@ -16,29 +16,49 @@
 
 package org.cvcoei.sistools.common.http;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import lombok.extern.log4j.Log4j2;
+import okhttp3.Call;
+import okhttp3.Callback;
 import okhttp3.OkHttpClient;
 import okhttp3.Request;
 import okhttp3.Response;
+import org.cvcoei.sistools.common.config.PollingProperties;
 import org.cvcoei.sistools.common.expression.ExpressionEvalService;
 import org.cvcoei.sistools.common.json.JsonService;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.expression.EvaluationException;
 import org.springframework.expression.Expression;
 import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
-import reactor.retry.Repeat;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
 
 import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.Reader;
 import java.time.Duration;
 import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Consumer;
+import java.util.function.Supplier;
 
 /**
  * Spring service to provide HTTP helper methods for executing client requests, and higher level operations
  * such as continually polling an API within a defined period of time.
+ *
+ * Each operation has a non-blocking variant returning a Mono or Flux, built on asynchronous OkHttp calls so
+ * that many requests can share the OkHttp dispatcher threads. The blocking methods are adapters over them.
+ *
+ * Every request is timed in the `http.client.requests` timer, and every poll request is counted in
+ * `http.client.polls`.
+ *
+ * Delays between polls, poll timeouts and progress estimates all use one Reactor scheduler as their clock. It is
+ * the parallel scheduler unless a Scheduler bean is provided, such as a VirtualTimeScheduler in tests.
  */
 @Log4j2
 @Service
@@ -53,6 +73,15 @@ public class HttpApiService {
     @Autowired
     OkHttpClient httpClient;
 
+    @Autowired
+    PollingProperties pollingProperties;
+
+    @Autowired
+    MeterRegistry meterRegistry;
+
+    @Autowired(required = false)
+    Scheduler pollingScheduler;
+
     private void checkForCanvasException(Request request, Response response) {
         // Check for a non-success code
         try {
@@ -74,21 +103,66 @@ public class HttpApiService {
         }
     }
 
+    /**
+     * Execute an HTTP request without blocking the calling thread. The request is sent when the Mono is
+     * subscribed, and cancelling the subscription cancels the call.
+     * @param request An OkHttp request specifying the request to make
+     * @return Mono of the response body as JSON parsed into a Map
+     */
+    public Mono<Map<String, Object>> callAsync(Request request) {
+        return execute(request).map(response -> {
+            // Parse straight from the response body, rather than reading it into a string first
+            try (Response closeableResponse = response) {
+                return jsonService.toMap(Objects.requireNonNull(closeableResponse.body()).charStream());
+            }
+        });
+    }
+
+    /**
+     * Execute an HTTP request without blocking the calling thread, and bind the JSON response to a class.
+     * @param request An OkHttp request specifying the request to make
+     * @param type The class to bind the response to
+     * @return Mono of the bound response
+     */
+    public <T> Mono<T> callAsync(Request request, Class<T> type) {
+        return execute(request).map(response -> {
+            // Parse straight from the response body, rather than reading it into a string first
+            try (Response closeableResponse = response) {
+                return jsonService.fromJson(Objects.requireNonNull(closeableResponse.body()).charStream(), type);
+            }
+        });
+    }
+
     /**
      * Execute an HTTP request.
      * @param request An OkHttp request specifying the request to make
      * @return Assumes the response to be JSON, and returns a Map
      */
-    public Map<String, Object> call(Request request){
-        try (Response response = httpClient.newCall(request).execute()) {
-            checkForCanvasException(request, response);
-            String jsonResponse = Objects.requireNonNull(response.body()).string();
-            return jsonService.toMap(jsonResponse);
-        }
-        catch(IOException ioException) {
-            // Rethrow unchecked
-            throw new RuntimeException(ioException);
-        }
+    public Map<String, Object> call(Request request) {
+        return callAsync(request).block();
+    }
+
+    /**
+     * Execute an HTTP request, and bind the JSON response to a class.
+     * @param request An OkHttp request specifying the request to make
+     * @param type The class to bind the response to
+     * @return The bound response
+     */
+    public <T> T call(Request request, Class<T> type) {
+        return callAsync(request, type).block();
+    }
+
+    /**
+     * Execute an HTTP request to download a file without blocking the calling thread, and emit each line
+     * of the response. Lines are read as they are requested by the subscriber.
+     * @param request An OkHttp request specifying the request to make
+     * @return Flux of lines from the response body
+     */
+    public Flux<String> fetchLinesAsync(Request request) {
+        return execute(request).flatMapMany(response -> Flux.using(
+            () -> new BufferedReader(Objects.requireNonNull(response.body()).charStream()),
+            buffer -> Flux.fromStream(buffer.lines()),
+            buffer -> response.close()));
     }
 
     /**
@@ -97,53 +171,231 @@ public class HttpApiService {
      * @param lineHandler Handler function to process each line
      */
     public void fetchLines(Request request, Consumer<String> lineHandler) {
-        try (Response response = httpClient.newCall(request).execute()) {
-            checkForCanvasException(request, response);
-            Reader responseReader = Objects.requireNonNull(response.body()).charStream();
-            try (BufferedReader buffer = new BufferedReader(responseReader)) {
-                String line;
-                while ((line = buffer.readLine()) != null) {
-                    lineHandler.accept(line);
-                }
-            }
-        }
-        catch(IOException ioException) {
-            // Rethrow unchecked
-            throw new RuntimeException(ioException);
-        }
+        fetchLinesAsync(request)
+            .doOnNext(lineHandler)
+            .blockLast();
+    }
+
+    /**
+     * Continually poll an API until a specific condition in the response payload is met, without blocking
+     * a thread between requests. Requests start quickly and back off exponentially, using any progress
+     * reported by the API to estimate when to check again (see {@link PollingBackoff}). The attempt limit
+     * and timeout are taken from the policy so that a poll does not run forever, particularly if a program
+     * is configured as a cron job.
+     * @param request An OkHttp request specifying the request to make
+     * @param policy Polling intervals and limits
+     * @param watchExpression A Spring expression to check the response body. Truthy results will end the poll
+     * @return Mono of the last API response when the poll terminates
+     */
+    public Mono<Map<String, Object>> pollAsync(Request request, PollingProperties policy, String watchExpression) {
+        return poll(request, () -> callAsync(request), policy, watchExpression);
+    }
+
+    /**
+     * Continually poll an API, binding each response to a class, until a specific condition is met. The watch
+     * expression is evaluated against the bound object, so it refers to its properties.
+     * @param request An OkHttp request specifying the request to make
+     * @param type The class to bind each response to
+     * @param policy Polling intervals and limits
+     * @param watchExpression A Spring expression to check the response. Truthy results will end the poll
+     * @return Mono of the last API response when the poll terminates
+     * @see #pollAsync(Request, PollingProperties, String)
+     */
+    public <T> Mono<T> pollAsync(Request request, Class<T> type, PollingProperties policy, String watchExpression) {
+        return poll(request, () -> callAsync(request, type), policy, watchExpression);
+    }
+
+    /**
+     * Continually poll an API using the configured polling policy, binding each response to a class.
+     * @see #pollAsync(Request, Class, PollingProperties, String)
+     */
+    public <T> Mono<T> pollAsync(Request request, Class<T> type, String watchExpression) {
+        return pollAsync(request, type, pollingProperties, watchExpression);
+    }
+
+    /**
+     * Continually poll an API using the configured polling policy.
+     * @see #pollAsync(Request, PollingProperties, String)
+     */
+    public Mono<Map<String, Object>> pollAsync(Request request, String watchExpression) {
+        return pollAsync(request, pollingProperties, watchExpression);
+    }
+
+    /**
+     * Continually poll an API at a fixed interval, using the attempt limit and timeout of the configured
+     * polling policy.
+     * @see #pollAsync(Request, PollingProperties, String)
+     */
+    public Mono<Map<String, Object>> pollAsync(Request request, Duration pollingInterval, String watchExpression) {
+        return pollAsync(request, pollingProperties.withFixedInterval(pollingInterval), watchExpression);
     }
 
     /**
-     * Continually poll an API until a specific condition in the response payload is met. Currently has a hard
-     * timeout set of 30 minutes so that this method does not run forever, particularly if a program is
-     * configured as a cron job.
+     * Continually poll an API at a fixed interval until a specific condition in the response payload is met.
      * @param request An OkHttp request specifying the request to make
      * @param pollingInterval How often should the API be polled
      * @param watchExpression A Spring expression to check the response body. Truthy results will end the poll
      * @return The last API response when the poll terminates.
      */
     public Map<String, Object> poll(Request request, Duration pollingInterval, String watchExpression) {
+        return pollAsync(request, pollingInterval, watchExpression).block();
+    }
+
+    /**
+     * Continually poll an API using the configured polling policy until a specific condition in the response
+     * payload is met.
+     * @param request An OkHttp request specifying the request to make
+     * @param watchExpression A Spring expression to check the response body. Truthy results will end the poll
+     * @return The last API response when the poll terminates.
+     */
+    public Map<String, Object> poll(Request request, String watchExpression) {
+        return pollAsync(request, watchExpression).block();
+    }
+
+    private <T> Mono<T> poll(
+            Request request,
+            Supplier<Mono<T>> call,
+            PollingProperties policy,
+            String watchExpression) {
         // Parse the expression used to determine when to exit the poll
         final Expression responseExpression = expressionEvalService.parse(watchExpression);
 
-        // Create a Mono which can be continually queried until we meet our condition
-        return Mono.defer(() -> {
-            // Execute API request
-            return Mono.just(call(request));
-        })
+        // Resolve the scheduler for each poll, so that a virtual time scheduler installed by a test is picked up
+        final Scheduler scheduler = pollingScheduler != null ? pollingScheduler : Schedulers.parallel();
+
+        return Mono.defer(() -> pollUntil(request, call, policy, responseExpression, new PollingBackoff(policy), scheduler))
+            .timeout(policy.getTimeout(), scheduler);
+    }
+
+    private <T> Mono<T> pollUntil(
+            Request request,
+            Supplier<Mono<T>> call,
+            PollingProperties policy,
+            Expression responseExpression,
+            PollingBackoff backoff,
+            Scheduler scheduler) {
+        meterRegistry.counter("http.client.polls", "host", request.url().host()).increment();
+
+        return call.get().flatMap(response -> {
+            // Finish when the condition is met
+            if(Boolean.TRUE.equals(expressionEvalService.eval(responseExpression, response))) {
+                return Mono.just(response);
+            }
+
+            // Give up after the attempt limit, returning the last response
+            if(!backoff.tryAttempt()) {
+                log.warn("Stopped polling API {} after {} attempts", request.url(), backoff.getAttempts());
+                return Mono.just(response);
+            }
+
+            // Schedule the next request
+            Duration delay = backoff.nextDelay(getProgress(response, policy), scheduler.now(TimeUnit.NANOSECONDS));
+            log.info("Polling API {} again in {} ms", request.url(), delay.toMillis());
+
+            return Mono
+                .delay(delay, scheduler)
+                .then(Mono.defer(() -> pollUntil(request, call, policy, responseExpression, backoff, scheduler)));
+        });
+    }
+
+    private Double getProgress(Object response, PollingProperties policy) {
+        if(policy.getProgressField() == null || policy.getProgressField().isEmpty()) {
+            return null;
+        }
+
+        // Read the field from a map, or the property of the same name from a bound object
+        Object progress;
+        if(response instanceof Map) {
+            progress = ((Map<?, ?>) response).get(policy.getProgressField());
+        }
+        else {
+            try {
+                progress = expressionEvalService.eval(policy.getProgressField(), response);
+            }
+            catch(EvaluationException exception) {
+                progress = null;
+            }
+        }
+
+        return progress instanceof Number ? ((Number) progress).doubleValue() : null;
+    }
+
+    /**
+     * Enqueue an HTTP request on the OkHttp dispatcher, and emit the response once the headers have been
+     * received. Non-success responses are turned into errors. The subscriber must close the response, unless it
+     * cancels before the response is emitted, in which case the response is closed here.
+     * @param request An OkHttp request specifying the request to make
+     * @return Mono of the successful response
+     */
+    private Mono<Response> execute(Request request) {
+        return Mono.create(sink -> {
+            Call call = httpClient.newCall(request);
+            Timer.Sample sample = Timer.start(meterRegistry);
+
+            // Response received but not yet taken by the subscriber, which would otherwise hold its connection
+            AtomicReference<Response> undeliveredResponse = new AtomicReference<>();
+            AtomicBoolean cancelled = new AtomicBoolean();
+
+            // Only called if the subscriber cancels before the response was emitted
+            sink.onCancel(() -> {
+                cancelled.set(true);
+                call.cancel();
+                closeQuietly(undeliveredResponse.getAndSet(null));
+            });
+
+            call.enqueue(new Callback() {
+                @Override
+                public void onFailure(Call failedCall, IOException exception) {
+                    recordRequest(sample, request, "IO_ERROR");
+                    sink.error(exception);
+                }
 
-        .repeatWhen(Repeat
-            .times(100)
-            .fixedBackoff(pollingInterval)
-            .doOnRepeat(context -> log.info("Polling API {}", request.url())))
+                @Override
+                public void onResponse(Call completedCall, Response response) {
+                    recordRequest(sample, request, Integer.toString(response.code()));
 
-        .takeUntil(response -> expressionEvalService
-            .eval(responseExpression, response)
-            .equals(Boolean.TRUE))
+                    try {
+                        checkForCanvasException(request, response);
+                    }
+                    catch(RuntimeException exception) {
+                        response.close();
+                        sink.error(exception);
+                        return;
+                    }
 
-        // Wait for a maximum of 30 minutes for the file to be processed so that this program
-        // does not hang indefinitely.
-        .blockLast(Duration.ofMinutes(30));
+                    // The subscriber may have cancelled after OkHttp received the response
+                    undeliveredResponse.set(response);
+                    if(cancelled.get()) {
+                        closeQuietly(undeliveredResponse.getAndSet(null));
+                        return;
+                    }
+
+                    sink.success(response);
+                }
+            });
+        });
+    }
+
+    private static void closeQuietly(Response response) {
+        if(response != null) {
+            response.close();
+        }
+    }
+
+    /**
+     * Record the time from sending a request (including its body, such as a file upload) until the response
+     * headers were received.
+     * @param sample Timer sample started when the request was sent
+     * @param request The request
+     * @param status HTTP status code, or IO_ERROR if no response was received
+     */
+    private void recordRequest(Timer.Sample sample, Request request, String status) {
+        sample.stop(Timer
+            .builder("http.client.requests")
+            .tag("method", request.method())
+            .tag("host", request.url().host())
+            .tag("status", status)
+            .register(meterRegistry));
     }
 
 }
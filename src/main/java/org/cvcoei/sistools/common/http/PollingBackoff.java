@@ -0,0 +1,91 @@
+/*
+ * Copyright 2020 California Community Colleges Chancellor's Office
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.cvcoei.sistools.common.http;
+
+import org.cvcoei.sistools.common.config.PollingProperties;
+
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Calculates the delay before each request of a single poll. Delays start short and grow exponentially up
+ * to a maximum. When the polled job reports its progress, the rate of progress between two requests is used
+ * to estimate when the job will finish, and the next request is scheduled for then instead. Random jitter is
+ * applied to every delay.
+ *
+ * Instances are stateful, and a new one must be created for each poll.
+ */
+public class PollingBackoff {
+
+    private final PollingProperties properties;
+
+    private int attempts;
+
+    private double lastProgress = Double.NaN;
+
+    private long lastProgressNanos;
+
+    public PollingBackoff(PollingProperties properties) {
+        this.properties = properties;
+    }
+
+    /**
+     * Record a request.
+     * @return True if another request is allowed within the attempt limit
+     */
+    public boolean tryAttempt() {
+        return ++attempts < properties.getMaxAttempts();
+    }
+
+    public int getAttempts() {
+        return attempts;
+    }
+
+    /**
+     * Calculate the delay before the next request.
+     * @param progress Percentage of the job completed according to the last response, or null if unknown
+     * @param nowNanos Current time in nanoseconds, from a monotonic clock such as {@link System#nanoTime()}
+     * @return Delay before the next request
+     */
+    public Duration nextDelay(Double progress, long nowNanos) {
+        long initialMillis = properties.getInitialInterval().toMillis();
+        long maxMillis = Math.max(initialMillis, properties.getMaxInterval().toMillis());
+
+        // Grow the delay exponentially with each request
+        double delayMillis = initialMillis * Math.pow(properties.getMultiplier(), Math.max(0, attempts - 1));
+
+        // Estimate the time remaining from the rate of progress since the last response
+        if(progress != null) {
+            if(!Double.isNaN(lastProgress) && progress > lastProgress && progress < 100) {
+                double elapsedMillis = (nowNanos - lastProgressNanos) / 1_000_000.0;
+                double rate = (progress - lastProgress) / elapsedMillis;
+                delayMillis = (100 - progress) / rate;
+            }
+
+            if(Double.isNaN(lastProgress) || progress != lastProgress) {
+                lastProgress = progress;
+                lastProgressNanos = nowNanos;
+            }
+        }
+
+        // Apply random jitter, and keep the delay within the configured bounds
+        double jitter = properties.getJitter() * (2 * ThreadLocalRandom.current().nextDouble() - 1);
+        delayMillis = Math.min(maxMillis, Math.max(initialMillis, delayMillis) * (1 + jitter));
+
+        return Duration.ofMillis(Math.max(1, Math.round(delayMillis)));
+    }
+
+}
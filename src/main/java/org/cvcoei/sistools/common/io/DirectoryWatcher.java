@@ -0,0 +1,199 @@
+/*
+ * Copyright 2020 California Community Colleges Chancellor's Office
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.cvcoei.sistools.common.io;
+
+import lombok.extern.log4j.Log4j2;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.*;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static java.nio.file.StandardWatchEventKinds.*;
+
+/**
+ * Watches a directory for input files dropped by another process, and hands them out in batches once they have
+ * finished arriving. A batch is released after no matching file has been created or modified for a quiet
+ * period, so that files still being written (for example by an SFTP transfer) are not read part way through,
+ * and files which arrive close together are handled together.
+ *
+ * The watcher relies on file system notifications, so the directory must be on a local file system. Changes
+ * made over a network share may not be reported.
+ */
+@Log4j2
+public class DirectoryWatcher implements Closeable {
+
+    private final Path directory;
+
+    private final PathMatcher matcher;
+
+    private final Duration quietPeriod;
+
+    private final WatchService watchService;
+
+    private boolean initialScan = true;
+
+    /**
+     * Start watching a directory. Changes are recorded from this point on, even while the caller is busy
+     * processing a previous batch.
+     * @param directory Directory to watch (subdirectories are not watched)
+     * @param matcher Matcher for the input files of interest
+     * @param quietPeriod Time without changes before files are considered complete
+     * @throws IOException
+     */
+    public DirectoryWatcher(Path directory, PathMatcher matcher, Duration quietPeriod) throws IOException {
+        this.directory = directory;
+        this.matcher = matcher;
+        this.quietPeriod = quietPeriod;
+
+        watchService = directory.getFileSystem().newWatchService();
+        directory.register(watchService, ENTRY_CREATE, ENTRY_MODIFY);
+    }
+
+    /**
+     * Block until a batch of input files is ready. The first call returns the files already waiting in the
+     * directory, and later calls wait for a new or modified file first. Files which are still in the directory
+     * when the next batch is released (for example because they could not be processed) are included again.
+     * @return Matching files in the directory, ordered by name
+     * @throws IOException
+     * @throws InterruptedException
+     * @throws ClosedWatchServiceException if the watcher is closed while waiting
+     */
+    public List<Path> awaitFiles() throws IOException, InterruptedException {
+        while(true) {
+            // Wait for a matching file to arrive (unless picking up files which were already waiting)
+            boolean changed = !initialScan;
+            if(!initialScan) {
+                awaitChange(null);
+            }
+
+            initialScan = false;
+
+            // Wait until the files stop changing
+            awaitQuiet(changed);
+
+            List<Path> files = FileUtilities.findFiles(directory, matcher);
+            if(!files.isEmpty()) {
+                return files;
+            }
+        }
+    }
+
+    /**
+     * Wait until no matching file has been changed for the quiet period. Modification times are checked as
+     * well as notifications, to cover files that were part way through being written before watching started.
+     * @param changed Whether a change was just seen
+     * @throws IOException
+     * @throws InterruptedException
+     */
+    private void awaitQuiet(boolean changed) throws IOException, InterruptedException {
+        long quietMillis = quietPeriod.toMillis();
+        long settledAt = changed ? System.currentTimeMillis() + quietMillis : 0;
+
+        while(true) {
+            long remainingMillis = settledAt - System.currentTimeMillis();
+
+            if(remainingMillis > 0) {
+                // Restart the quiet period every time another change is seen
+                if(awaitChange(Duration.ofMillis(remainingMillis))) {
+                    settledAt = System.currentTimeMillis() + quietMillis;
+                }
+
+                continue;
+            }
+
+            // Check whether any file was modified recently. File times can run slightly ahead of the system clock,
+            // so a time less than the quiet period ahead counts as modified now, and later times are ignored as
+            // clock skew.
+            long now = System.currentTimeMillis();
+            long lastModified = 0;
+
+            for(Path file : FileUtilities.findFiles(directory, matcher)) {
+                long fileModified = Files.getLastModifiedTime(file).toMillis();
+                if(fileModified < now + quietMillis) {
+                    lastModified = Math.max(lastModified, Math.min(fileModified, now));
+                }
+            }
+
+            if(lastModified + quietMillis <= now) {
+                return;
+            }
+
+            settledAt = lastModified + quietMillis;
+        }
+    }
+
+    /**
+     * Wait for a matching file to be created or modified.
+     * @param timeout Longest time to wait, or null to wait indefinitely
+     * @return True if a matching file changed, or false if the timeout expired first
+     * @throws IOException if the directory can no longer be watched
+     * @throws InterruptedException
+     */
+    private boolean awaitChange(Duration timeout) throws IOException, InterruptedException {
+        long deadline = timeout != null ? System.nanoTime() + timeout.toNanos() : 0;
+
+        while(true) {
+            WatchKey key;
+
+            if(timeout == null) {
+                key = watchService.take();
+            }
+            else {
+                long remainingNanos = deadline - System.nanoTime();
+                key = remainingNanos > 0 ? watchService.poll(remainingNanos, TimeUnit.NANOSECONDS) : null;
+
+                if(key == null) {
+                    return false;
+                }
+            }
+
+            boolean changed = false;
+
+            for(WatchEvent<?> event : key.pollEvents()) {
+                // Events were dropped, so assume a matching file changed
+                if(event.kind() == OVERFLOW) {
+                    changed = true;
+                    continue;
+                }
+
+                // Ignore other files, such as the completed and failed subdirectories
+                Path path = directory.resolve((Path) event.context());
+                if(matcher.matches(path)) {
+                    log.debug("Input file {} {}", path, event.kind() == ENTRY_CREATE ? "created" : "modified");
+                    changed = true;
+                }
+            }
+
+            if(!key.reset()) {
+                throw new IOException("Watched directory " + directory + " is no longer accessible");
+            }
+
+            if(changed) {
+                return true;
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        watchService.close();
+    }
+
+}
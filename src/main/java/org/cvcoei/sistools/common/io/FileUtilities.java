@@ -18,11 +18,18 @@ package org.cvcoei.sistools.common.io;
 
 import com.ibm.icu.text.CharsetDetector;
 
-import java.io.IOException;
+import java.io.*;
 import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.PathMatcher;
 import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 /**
  * Collection of utilities for working with local files.
@@ -30,25 +37,188 @@ import java.nio.file.StandardCopyOption;
 public class FileUtilities {
 
     /**
-     * Create a Reader with additional logic to first detect the correct character set to use. Uses ICU4J library
-     * to perform the character set detection. This improves cross-platform support by seamlessly supporting
-     * UTF-8 files that may be created on a Unix type system, or UTF-16 files which can be common on Windows platofrms.
+     * Default number of bytes sampled from the start of a file for character set detection
+     */
+    public static final int DEFAULT_CHARSET_SAMPLE_SIZE = 64 * 1024;
+
+    private static final byte[] BOM_UTF_8 = { (byte) 0xEF, (byte) 0xBB, (byte) 0xBF };
+
+    private static final byte[] BOM_UTF_16BE = { (byte) 0xFE, (byte) 0xFF };
+
+    private static final byte[] BOM_UTF_16LE = { (byte) 0xFF, (byte) 0xFE };
+
+    /**
+     * Create a Reader with additional logic to first detect the correct character set to use, sampling up to
+     * {@link #DEFAULT_CHARSET_SAMPLE_SIZE} bytes from the start of the file.
      * @param path Path to source file to read
      * @return Typed pair of both the reader and detected character set
      * @throws IOException
+     * @see #getReaderWithCharsetDetection(Path, int)
      */
     public static ReaderWithCharset getReaderWithCharsetDetection(Path path) throws IOException {
-        // Create charset detector from ICU4J library
-        CharsetDetector detector = new CharsetDetector();
+        return getReaderWithCharsetDetection(path, DEFAULT_CHARSET_SAMPLE_SIZE);
+    }
+
+    /**
+     * Create a Reader with additional logic to first detect the correct character set to use. This improves
+     * cross-platform support by seamlessly supporting UTF-8 files that may be created on a Unix type system, or
+     * UTF-16 files which can be common on Windows platofrms.
+     *
+     * Detection only looks at a bounded sample from the start of the file, which is buffered and then replayed
+     * to the reader so that the file is only opened and read once. A byte order mark is honored (and skipped)
+     * when present. Otherwise a sample which is plain ASCII or valid UTF-8 (without NUL bytes, which point to
+     * UTF-16 without a byte order mark) is read as UTF-8, and anything else falls back to statistical detection
+     * with the ICU4J library.
+     * @param path Path to source file to read
+     * @param sampleSize Maximum number of bytes to sample for detection
+     * @return Typed pair of both the reader and detected character set
+     * @throws IOException
+     */
+    public static ReaderWithCharset getReaderWithCharsetDetection(Path path, int sampleSize) throws IOException {
+        BufferedInputStream input = new BufferedInputStream(Files.newInputStream(path), sampleSize);
+
+        try {
+            // Read a sample from the start of the file, and rewind
+            input.mark(sampleSize);
+            byte[] sample = new byte[sampleSize];
+            int sampleLength = readFully(input, sample);
+            input.reset();
+
+            // Perform detection
+            final Charset detectedCharset;
+            if(startsWith(sample, sampleLength, BOM_UTF_8)) {
+                detectedCharset = StandardCharsets.UTF_8;
+                skipFully(input, BOM_UTF_8.length);
+            }
+            else if(startsWith(sample, sampleLength, BOM_UTF_16BE)) {
+                detectedCharset = StandardCharsets.UTF_16BE;
+                skipFully(input, BOM_UTF_16BE.length);
+            }
+            else if(startsWith(sample, sampleLength, BOM_UTF_16LE)) {
+                detectedCharset = StandardCharsets.UTF_16LE;
+                skipFully(input, BOM_UTF_16LE.length);
+            }
+            else if(isUtf8(sample, sampleLength, sampleLength == sampleSize)) {
+                detectedCharset = StandardCharsets.UTF_8;
+            }
+            else {
+                // Create charset detector from ICU4J library
+                CharsetDetector detector = new CharsetDetector();
+                detector.setText(Arrays.copyOf(sample, sampleLength));
+                detectedCharset = Charset.forName(detector.detect().getName());
+            }
+
+            // Create a reader using the matched character set
+            return new ReaderWithCharset(
+                new BufferedReader(new InputStreamReader(input, detectedCharset)),
+                detectedCharset);
+        }
+        catch(IOException | RuntimeException exception) {
+            input.close();
+            throw exception;
+        }
+    }
+
+    /**
+     * Check if bytes are plain ASCII or well formed UTF-8. NUL bytes are valid UTF-8, but never appear in text
+     * files, while every ASCII character of UTF-16 text has one, so bytes with a NUL are not treated as UTF-8.
+     * @param bytes Bytes to check
+     * @param length Number of bytes to check
+     * @param truncated Whether the bytes may end part way through a multi-byte sequence
+     * @return True if the bytes can be read as UTF-8
+     */
+    static boolean isUtf8(byte[] bytes, int length, boolean truncated) {
+        int i = 0;
+
+        while(i < length) {
+            int lead = bytes[i] & 0xFF;
+
+            // Fast path for ASCII
+            if(lead < 0x80) {
+                if(lead == 0x00) {
+                    return false;
+                }
 
-        // Perform detection
-        detector.setText(Files.readAllBytes(path));
-        final Charset detectedCharset = Charset.forName(detector.detect().getName());
+                i++;
+                continue;
+            }
 
-        // Create a reader using the matched character set
-        return new ReaderWithCharset(
-            Files.newBufferedReader(path, detectedCharset),
-            detectedCharset);
+            // Determine the length of the multi-byte sequence
+            int sequenceLength;
+            if(lead >= 0xC2 && lead <= 0xDF) {
+                sequenceLength = 2;
+            }
+            else if(lead >= 0xE0 && lead <= 0xEF) {
+                sequenceLength = 3;
+            }
+            else if(lead >= 0xF0 && lead <= 0xF4) {
+                sequenceLength = 4;
+            }
+            else {
+                return false;
+            }
+
+            if(i + sequenceLength > length) {
+                return truncated;
+            }
+
+            for(int j = 1; j < sequenceLength; j++) {
+                if((bytes[i + j] & 0xC0) != 0x80) {
+                    return false;
+                }
+            }
+
+            i += sequenceLength;
+        }
+
+        return true;
+    }
+
+    private static boolean startsWith(byte[] bytes, int length, byte[] prefix) {
+        if(length < prefix.length) {
+            return false;
+        }
+
+        for(int i = 0; i < prefix.length; i++) {
+            if(bytes[i] != prefix[i]) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private static int readFully(InputStream input, byte[] buffer) throws IOException {
+        int total = 0;
+        int read;
+
+        while(total < buffer.length && (read = input.read(buffer, total, buffer.length - total)) != -1) {
+            total += read;
+        }
+
+        return total;
+    }
+
+    private static void skipFully(InputStream input, long count) throws IOException {
+        while(count > 0) {
+            count -= input.skip(count);
+        }
+    }
+
+    /**
+     * Find the regular files directly inside a directory which match a pattern. Subdirectories are not searched.
+     * @param directory Directory to search
+     * @param matcher Matcher applied to the full path of each file
+     * @return Matching files ordered by file name, so that processing order is deterministic
+     * @throws IOException
+     */
+    public static List<Path> findFiles(Path directory, PathMatcher matcher) throws IOException {
+        try(Stream<Path> paths = Files.walk(directory, 1)) {
+            return paths
+                .filter(path -> Files.isRegularFile(path) && matcher.matches(path))
+                .sorted(Comparator.comparing(path -> path.getFileName().toString()))
+                .collect(Collectors.toList());
+        }
     }
 
     /**
@@ -0,0 +1,349 @@
+/*
+ * Copyright 2020 California Community Colleges Chancellor's Office
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.cvcoei.sistools.common.io;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDate;
+import java.util.function.IntPredicate;
+
+/**
+ * Persistent set of 64-bit record fingerprints, used to recognize records that have already been delivered so
+ * that they are not sent again. Fingerprints are held in memory in a compact open addressing hash table
+ * (12 bytes per entry), and saved to disk as a flat binary file.
+ *
+ * Each fingerprint carries the day it was last seen. New fingerprints stay pending until {@link #commit()} is
+ * called, at which point they become permanent, fingerprints not seen within the retention period are evicted,
+ * and the file is compacted. {@link #rollback()} discards pending fingerprints instead, and {@link #discard(long)}
+ * discards a single pending fingerprint (for example of a record which the destination rejected).
+ */
+public class FingerprintStore {
+
+    private static final int FILE_MAGIC = 0x43564346;
+
+    private static final int FILE_VERSION = 1;
+
+    /**
+     * Marker for an unused slot. A fingerprint that happens to equal this value is remapped.
+     */
+    private static final long EMPTY = 0L;
+
+    /**
+     * Day value for fingerprints added since the last commit
+     */
+    private static final int PENDING = Integer.MIN_VALUE;
+
+    /**
+     * Day value for pending fingerprints which have been discarded, and are dropped on the next commit
+     */
+    private static final int DISCARDED = Integer.MIN_VALUE + 1;
+
+    private static final float LOAD_FACTOR = 0.6f;
+
+    /**
+     * How a fingerprint passed to {@link #add(long)} was known to the store
+     */
+    public enum Seen {
+
+        /**
+         * The fingerprint is new, and is now pending
+         */
+        NEW,
+
+        /**
+         * The fingerprint was already added since the last commit
+         */
+        PENDING,
+
+        /**
+         * The fingerprint was made permanent by an earlier commit
+         */
+        COMMITTED
+
+    }
+
+    private final Path path;
+
+    private final int retentionDays;
+
+    private long[] fingerprints;
+
+    private int[] days;
+
+    private int size;
+
+    private int pendingCount;
+
+    private FingerprintStore(Path path, int retentionDays, int expectedSize) {
+        this.path = path;
+        this.retentionDays = retentionDays;
+        allocate(expectedSize);
+    }
+
+    /**
+     * Open a fingerprint store, loading any fingerprints previously saved to disk. Fingerprints older than the
+     * retention period are dropped while loading.
+     * @param path Path to the store file
+     * @param retentionDays How many days to keep a fingerprint after it was last seen
+     * @return The fingerprint store
+     */
+    public static FingerprintStore open(Path path, int retentionDays) {
+        if(!Files.exists(path)) {
+            return empty(path, retentionDays);
+        }
+
+        try(DataInputStream input = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+            if(input.readInt() != FILE_MAGIC || input.readInt() != FILE_VERSION) {
+                throw new IOException("Unrecognized fingerprint store format " + path);
+            }
+
+            int count = input.readInt();
+            int oldestDay = today() - retentionDays;
+            FingerprintStore store = new FingerprintStore(path, retentionDays, count);
+
+            for(int i = 0; i < count; i++) {
+                long fingerprint = input.readLong();
+                int day = input.readInt();
+
+                if(day >= oldestDay) {
+                    store.insert(fingerprint, day);
+                }
+            }
+
+            return store;
+        }
+        catch(IOException ioException) {
+            // Rethrow as unchecked exception
+            throw new RuntimeException(ioException);
+        }
+    }
+
+    /**
+     * Create an empty fingerprint store which ignores any fingerprints previously saved to disk, and replaces
+     * them on the next commit.
+     * @param path Path to the store file
+     * @param retentionDays How many days to keep a fingerprint after it was last seen
+     * @return The fingerprint store
+     */
+    public static FingerprintStore empty(Path path, int retentionDays) {
+        return new FingerprintStore(path, retentionDays, 1024);
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    /**
+     * @return Number of fingerprints held, including pending fingerprints
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return Number of fingerprints added since the last commit
+     */
+    public int pendingSize() {
+        return pendingCount;
+    }
+
+    /**
+     * Record that a fingerprint has been seen.
+     * @param fingerprint The fingerprint
+     * @return {@link Seen#NEW} if the fingerprint is new (and is now pending), otherwise how it was already known
+     */
+    public Seen add(long fingerprint) {
+        fingerprint = normalize(fingerprint);
+        int slot = find(fingerprint);
+
+        if(fingerprints[slot] == fingerprint) {
+            // A discarded fingerprint is seen again, so it is pending again
+            if(days[slot] == DISCARDED) {
+                days[slot] = PENDING;
+                pendingCount++;
+                return Seen.NEW;
+            }
+
+            if(days[slot] == PENDING) {
+                return Seen.PENDING;
+            }
+
+            // Refresh the last seen day of committed fingerprints
+            days[slot] = today();
+            return Seen.COMMITTED;
+        }
+
+        insert(fingerprint, PENDING);
+        pendingCount++;
+        return Seen.NEW;
+    }
+
+    /**
+     * Discard a pending fingerprint, so that it is not made permanent by the next commit. Committed fingerprints
+     * are left unchanged.
+     * @param fingerprint The fingerprint
+     * @return True if the fingerprint was pending and has been discarded
+     */
+    public boolean discard(long fingerprint) {
+        fingerprint = normalize(fingerprint);
+        int slot = find(fingerprint);
+
+        if(fingerprints[slot] != fingerprint || days[slot] != PENDING) {
+            return false;
+        }
+
+        days[slot] = DISCARDED;
+        pendingCount--;
+        return true;
+    }
+
+    /**
+     * Make all pending fingerprints permanent, evict expired fingerprints and save the store to disk.
+     */
+    public void commit() {
+        int today = today();
+        int oldestDay = today - retentionDays;
+
+        for(int i = 0; i < days.length; i++) {
+            if(days[i] == PENDING) {
+                days[i] = today;
+            }
+        }
+
+        pendingCount = 0;
+        rebuild(day -> day != DISCARDED && day >= oldestDay);
+        save();
+    }
+
+    /**
+     * Discard all fingerprints added since the last commit.
+     */
+    public void rollback() {
+        pendingCount = 0;
+        rebuild(day -> day != PENDING && day != DISCARDED);
+    }
+
+    private void save() {
+        try {
+            Files.createDirectories(path.toAbsolutePath().getParent());
+            Path temporaryPath = path.resolveSibling(path.getFileName() + ".tmp");
+
+            try(DataOutputStream output = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporaryPath)))) {
+                output.writeInt(FILE_MAGIC);
+                output.writeInt(FILE_VERSION);
+                output.writeInt(size);
+
+                for(int i = 0; i < fingerprints.length; i++) {
+                    if(fingerprints[i] != EMPTY) {
+                        output.writeLong(fingerprints[i]);
+                        output.writeInt(days[i]);
+                    }
+                }
+            }
+
+            Files.move(temporaryPath, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        catch(IOException ioException) {
+            // Rethrow as unchecked exception
+            throw new RuntimeException(ioException);
+        }
+    }
+
+    private void allocate(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(16, (int) (expectedSize / LOAD_FACTOR)) - 1) << 1;
+        fingerprints = new long[capacity];
+        days = new int[capacity];
+        size = 0;
+    }
+
+    /**
+     * Rebuild the table keeping only the entries whose day matches the filter.
+     */
+    private void rebuild(IntPredicate keep) {
+        long[] oldFingerprints = fingerprints;
+        int[] oldDays = days;
+
+        int keepCount = 0;
+        for(int i = 0; i < oldFingerprints.length; i++) {
+            if(oldFingerprints[i] != EMPTY && keep.test(oldDays[i])) {
+                keepCount++;
+            }
+        }
+
+        allocate(keepCount);
+
+        for(int i = 0; i < oldFingerprints.length; i++) {
+            if(oldFingerprints[i] != EMPTY && keep.test(oldDays[i])) {
+                insert(oldFingerprints[i], oldDays[i]);
+            }
+        }
+    }
+
+    private void insert(long fingerprint, int day) {
+        if(size + 1 > fingerprints.length * LOAD_FACTOR) {
+            grow();
+        }
+
+        int slot = find(fingerprint);
+        if(fingerprints[slot] == EMPTY) {
+            size++;
+        }
+
+        fingerprints[slot] = fingerprint;
+        days[slot] = day;
+    }
+
+    private void grow() {
+        long[] oldFingerprints = fingerprints;
+        int[] oldDays = days;
+
+        fingerprints = new long[oldFingerprints.length << 1];
+        days = new int[oldDays.length << 1];
+
+        for(int i = 0; i < oldFingerprints.length; i++) {
+            if(oldFingerprints[i] != EMPTY) {
+                int slot = find(oldFingerprints[i]);
+                fingerprints[slot] = oldFingerprints[i];
+                days[slot] = oldDays[i];
+            }
+        }
+    }
+
+    /**
+     * Find the slot holding a fingerprint, or the empty slot where it should be inserted (linear probing).
+     */
+    private int find(long fingerprint) {
+        int mask = fingerprints.length - 1;
+        int slot = (int) (fingerprint ^ (fingerprint >>> 32)) & mask;
+
+        while(fingerprints[slot] != EMPTY && fingerprints[slot] != fingerprint) {
+            slot = (slot + 1) & mask;
+        }
+
+        return slot;
+    }
+
+    private static long normalize(long fingerprint) {
+        return fingerprint == EMPTY ? 1L : fingerprint;
+    }
+
+    private static int today() {
+        return (int) LocalDate.now().toEpochDay();
+    }
+
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright 2020 California Community Colleges Chancellor's Office
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.cvcoei.sistools.common.io;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDateTime;
+import java.util.Optional;
+import java.util.Properties;
+
+/**
+ * Persists a high watermark (the latest timestamp successfully processed) to a small local properties file, so
+ * that subsequent runs can pick up where the last successful run left off.
+ */
+public class WatermarkStore {
+
+    private static final String PROPERTY_WATERMARK = "watermark";
+
+    private final Path path;
+
+    public WatermarkStore(Path path) {
+        this.path = path;
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    /**
+     * Read the last saved watermark.
+     * @return The watermark, or empty if one has not been saved yet
+     */
+    public Optional<LocalDateTime> read() {
+        if(!Files.exists(path)) {
+            return Optional.empty();
+        }
+
+        try(Reader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            Properties properties = new Properties();
+            properties.load(reader);
+
+            return Optional
+                .ofNullable(properties.getProperty(PROPERTY_WATERMARK))
+                .map(LocalDateTime::parse);
+        }
+        catch(IOException ioException) {
+            // Rethrow as unchecked exception
+            throw new RuntimeException(ioException);
+        }
+    }
+
+    /**
+     * Save a new watermark. The file is written to a temporary sibling first and then moved into place, so
+     * that an interrupted write never leaves a corrupt watermark behind.
+     * @param watermark The watermark to save
+     */
+    public void write(LocalDateTime watermark) {
+        try {
+            Files.createDirectories(path.toAbsolutePath().getParent());
+            Path temporaryPath = path.resolveSibling(path.getFileName() + ".tmp");
+
+            try(Writer writer = Files.newBufferedWriter(temporaryPath, StandardCharsets.UTF_8)) {
+                Properties properties = new Properties();
+                properties.setProperty(PROPERTY_WATERMARK, watermark.toString());
+                properties.store(writer, "Last successfully imported activity date");
+            }
+
+            Files.move(temporaryPath, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        catch(IOException ioException) {
+            // Rethrow as unchecked exception
+            throw new RuntimeException(ioException);
+        }
+    }
+
+}
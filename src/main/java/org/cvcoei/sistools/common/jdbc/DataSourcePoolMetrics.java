@@ -0,0 +1,155 @@
+/*
+ * Copyright 2020 California Community Colleges Chancellor's Office
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.cvcoei.sistools.common.jdbc;
+
+import com.zaxxer.hikari.metrics.IMetricsTracker;
+import com.zaxxer.hikari.metrics.MetricsTrackerFactory;
+import com.zaxxer.hikari.metrics.PoolStats;
+import com.zaxxer.hikari.metrics.micrometer.MicrometerMetricsTrackerFactory;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.log4j.Log4j2;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Collects statistics from a Hikari connection pool, including the current number of active and idle
+ * connections, and how long callers waited to be handed a connection. The statistics are published to a
+ * Micrometer registry with Hikari's own meters (hikaricp.connections.active, .idle, .pending, .acquire and so
+ * on, tagged with the pool name), so that they are part of the metrics export. A summary is also logged when
+ * the pool is closed.
+ */
+@Log4j2
+public class DataSourcePoolMetrics implements MetricsTrackerFactory {
+
+    private final MetricsTrackerFactory meterRegistryTrackerFactory;
+
+    private volatile PoolStats poolStats;
+
+    private volatile String poolName;
+
+    private final LongAdder acquiredCount = new LongAdder();
+
+    private final LongAdder acquiredWaitNanos = new LongAdder();
+
+    private final LongAccumulator acquiredMaxWaitNanos = new LongAccumulator(Long::max, 0);
+
+    private final LongAdder timeoutCount = new LongAdder();
+
+    private final LongAdder createdCount = new LongAdder();
+
+    public DataSourcePoolMetrics(MeterRegistry meterRegistry) {
+        this.meterRegistryTrackerFactory = new MicrometerMetricsTrackerFactory(meterRegistry);
+    }
+
+    @Override
+    public IMetricsTracker create(String poolName, PoolStats poolStats) {
+        this.poolName = poolName;
+        this.poolStats = poolStats;
+
+        final IMetricsTracker meterRegistryTracker = meterRegistryTrackerFactory.create(poolName, poolStats);
+
+        return new IMetricsTracker() {
+            @Override
+            public void recordConnectionCreatedMillis(long connectionCreatedMillis) {
+                createdCount.increment();
+                meterRegistryTracker.recordConnectionCreatedMillis(connectionCreatedMillis);
+            }
+
+            @Override
+            public void recordConnectionAcquiredNanos(long elapsedAcquiredNanos) {
+                acquiredCount.increment();
+                acquiredWaitNanos.add(elapsedAcquiredNanos);
+                acquiredMaxWaitNanos.accumulate(elapsedAcquiredNanos);
+                meterRegistryTracker.recordConnectionAcquiredNanos(elapsedAcquiredNanos);
+            }
+
+            @Override
+            public void recordConnectionUsageMillis(long elapsedBorrowedMillis) {
+                meterRegistryTracker.recordConnectionUsageMillis(elapsedBorrowedMillis);
+            }
+
+            @Override
+            public void recordConnectionTimeout() {
+                timeoutCount.increment();
+                meterRegistryTracker.recordConnectionTimeout();
+            }
+
+            @Override
+            public void close() {
+                meterRegistryTracker.close();
+                log.info(
+                    "Connection pool {} closed (connections created={} acquired={} timeouts={} wait avg={}ms max={}ms)",
+                    poolName,
+                    getCreatedConnections(),
+                    getAcquiredConnections(),
+                    getConnectionTimeouts(),
+                    getAverageWaitMillis(),
+                    getMaxWaitMillis());
+            }
+        };
+    }
+
+    public int getActiveConnections() {
+        return poolStats != null ? poolStats.getActiveConnections() : 0;
+    }
+
+    public int getIdleConnections() {
+        return poolStats != null ? poolStats.getIdleConnections() : 0;
+    }
+
+    public int getTotalConnections() {
+        return poolStats != null ? poolStats.getTotalConnections() : 0;
+    }
+
+    public int getPendingThreads() {
+        return poolStats != null ? poolStats.getPendingThreads() : 0;
+    }
+
+    public long getCreatedConnections() {
+        return createdCount.sum();
+    }
+
+    public long getAcquiredConnections() {
+        return acquiredCount.sum();
+    }
+
+    public long getConnectionTimeouts() {
+        return timeoutCount.sum();
+    }
+
+    public long getAverageWaitMillis() {
+        long count = acquiredCount.sum();
+        return count > 0 ? TimeUnit.NANOSECONDS.toMillis(acquiredWaitNanos.sum() / count) : 0;
+    }
+
+    public long getMaxWaitMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(acquiredMaxWaitNanos.get());
+    }
+
+    @Override
+    public String toString() {
+        return String.format(
+            "%s (active=%d idle=%d total=%d pending=%d)",
+            poolName,
+            getActiveConnections(),
+            getIdleConnections(),
+            getTotalConnections(),
+            getPendingThreads());
+    }
+
+}
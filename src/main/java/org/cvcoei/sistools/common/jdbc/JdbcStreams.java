@@ -0,0 +1,145 @@
+/*
+ * Copyright 2020 California Community Colleges Chancellor's Office
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.cvcoei.sistools.common.jdbc;
+
+import org.springframework.jdbc.core.ArgumentPreparedStatementSetter;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.support.JdbcUtils;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Collection of utilities for reading query results as lazy Java streams instead of materialized collections.
+ */
+public class JdbcStreams {
+
+    /**
+     * Execute a query and expose the result set as a lazy stream. Rows are mapped one at a time as the stream
+     * is consumed, so only the rows buffered by the JDBC driver are ever held in memory. The connection,
+     * statement and result set stay open until the stream is closed, so callers must close the stream
+     * (for example with try-with-resources).
+     * @param dataSource Datasource to obtain a connection from
+     * @param sql Query to execute
+     * @param rowMapper Mapper to convert each row into an object
+     * @param <T> Type of the mapped objects
+     * @return Stream of mapped rows
+     */
+    public static <T> Stream<T> stream(DataSource dataSource, String sql, RowMapper<T> rowMapper) {
+        return stream(dataSource, sql, 0, rowMapper);
+    }
+
+    /**
+     * Execute a query and expose the result set as a lazy stream, with a hint to the driver for how many rows
+     * to fetch on each round trip to the database. Drivers such as Oracle default to a small fetch size
+     * (10 rows), which makes large result sets very chatty over the network.
+     * @param dataSource Datasource to obtain a connection from
+     * @param sql Query to execute
+     * @param fetchSize Number of rows to fetch per round trip, or zero to use the driver default
+     * @param rowMapper Mapper to convert each row into an object
+     * @param arguments Values to bind to the query parameters, in order
+     * @param <T> Type of the mapped objects
+     * @return Stream of mapped rows
+     */
+    public static <T> Stream<T> stream(
+        DataSource dataSource,
+        String sql,
+        int fetchSize,
+        RowMapper<T> rowMapper,
+        Object... arguments) {
+
+        Connection connection = null;
+        PreparedStatement statement = null;
+        ResultSet resultSet = null;
+
+        try {
+            connection = dataSource.getConnection();
+            statement = connection.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+
+            if(fetchSize > 0) {
+                statement.setFetchSize(fetchSize);
+            }
+
+            new ArgumentPreparedStatementSetter(arguments).setValues(statement);
+            resultSet = statement.executeQuery();
+        }
+        catch(SQLException sqlException) {
+            close(connection, statement, resultSet);
+
+            // Rethrow as unchecked exception
+            throw new RuntimeException(sqlException);
+        }
+
+        final Connection openConnection = connection;
+        final PreparedStatement openStatement = statement;
+        final ResultSet openResultSet = resultSet;
+
+        return StreamSupport
+            .stream(new ResultSetSpliterator<>(openResultSet, rowMapper), false)
+            .onClose(() -> close(openConnection, openStatement, openResultSet));
+    }
+
+    private static void close(Connection connection, PreparedStatement statement, ResultSet resultSet) {
+        JdbcUtils.closeResultSet(resultSet);
+        JdbcUtils.closeStatement(statement);
+        JdbcUtils.closeConnection(connection);
+    }
+
+    /**
+     * Spliterator which advances through a result set one row at a time.
+     */
+    private static class ResultSetSpliterator<T> extends Spliterators.AbstractSpliterator<T> {
+
+        private final ResultSet resultSet;
+
+        private final RowMapper<T> rowMapper;
+
+        private int rowNumber = 0;
+
+        ResultSetSpliterator(ResultSet resultSet, RowMapper<T> rowMapper) {
+            super(Long.MAX_VALUE, Spliterator.ORDERED | Spliterator.NONNULL);
+            this.resultSet = resultSet;
+            this.rowMapper = rowMapper;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super T> action) {
+            try {
+                if(!resultSet.next()) {
+                    return false;
+                }
+
+                action.accept(rowMapper.mapRow(resultSet, rowNumber++));
+                return true;
+            }
+            catch(SQLException sqlException) {
+                // Rethrow as unchecked exception
+                throw new RuntimeException(sqlException);
+            }
+        }
+
+    }
+
+}
@@ -21,6 +21,7 @@ import com.google.gson.GsonBuilder;
 import com.google.gson.reflect.TypeToken;
 import org.springframework.stereotype.Service;
 
+import java.io.Reader;
 import java.lang.reflect.Type;
 import java.util.Map;
 
@@ -49,12 +50,34 @@ public class JsonService {
     }
 
     /**
-     * Serialize a Map into a pretty formatted JSON string.
-     * @param map the map to serialize
+     * Deserialize JSON read from a character stream into a generic Map, without first reading the
+     * whole document into a string.
+     * @param reader the source of the JSON document
+     * @return Map of keys and values
+     */
+    public Map<String, Object> toMap(Reader reader) {
+        return gson.fromJson(reader, typeMapStringObject);
+    }
+
+    /**
+     * Deserialize JSON read from a character stream into an object of the given type, without first
+     * reading the whole document into a string. Fields missing from the type are skipped. Binding to
+     * {@link com.google.gson.JsonObject} keeps the whole document, with numbers as written.
+     * @param reader the source of the JSON document
+     * @param type the class to bind to
+     * @return Bound object
+     */
+    public <T> T fromJson(Reader reader, Class<T> type) {
+        return gson.fromJson(reader, type);
+    }
+
+    /**
+     * Serialize an object or Map into a pretty formatted JSON string.
+     * @param object the object to serialize
      * @return JSON pretty formatted string
      */
-    public String toJsonPretty(Map<String, Object> map) {
-        return gsonPretty.toJson(map);
+    public String toJsonPretty(Object object) {
+        return gsonPretty.toJson(object);
     }
 
 }
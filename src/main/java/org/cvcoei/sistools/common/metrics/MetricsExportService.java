@@ -0,0 +1,72 @@
+/*
+ * Copyright 2020 California Community Colleges Chancellor's Office
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.cvcoei.sistools.common.metrics;
+
+import io.micrometer.prometheus.PrometheusMeterRegistry;
+import lombok.extern.log4j.Log4j2;
+import org.cvcoei.sistools.common.config.MetricsProperties;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * Spring service to write the collected metrics to a local file in the Prometheus text format, so that a
+ * scheduler or node exporter can pick them up after each run.
+ */
+@Log4j2
+@Service
+public class MetricsExportService {
+
+    @Autowired
+    PrometheusMeterRegistry meterRegistry;
+
+    @Autowired
+    MetricsProperties properties;
+
+    /**
+     * Replace the export file with the current value of every meter. Readers never see a partly written file.
+     * Does nothing if exporting is disabled, and a failed export is only logged so that it never fails a run.
+     */
+    public synchronized void export() {
+        if(!properties.isEnabled()) {
+            return;
+        }
+
+        Path exportFile = Paths.get(properties.getExportFile()).toAbsolutePath();
+
+        try {
+            // Write next to the export file first, then swap it into place
+            Files.createDirectories(exportFile.getParent());
+            Path tempFile = Files.createTempFile(exportFile.getParent(), exportFile.getFileName().toString(), ".tmp");
+            Files.write(tempFile, meterRegistry.scrape().getBytes(StandardCharsets.UTF_8));
+            Files.move(tempFile, exportFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        catch(IOException ioException) {
+            log.warn("Failed to export metrics to {}", exportFile, ioException);
+            return;
+        }
+
+        log.debug("Exported metrics to {}", exportFile);
+    }
+
+}
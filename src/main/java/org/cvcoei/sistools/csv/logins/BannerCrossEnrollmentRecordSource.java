@@ -17,14 +17,20 @@
 package org.cvcoei.sistools.csv.logins;
 
 import lombok.extern.log4j.Log4j2;
-import oracle.jdbc.pool.OracleDataSource;
+import org.cvcoei.sistools.common.io.WatermarkStore;
+import org.cvcoei.sistools.common.jdbc.JdbcStreams;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
-import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
 
-import java.util.ArrayList;
-import java.util.List;
+import javax.sql.DataSource;
+import java.nio.file.Paths;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Optional;
+import java.util.stream.Stream;
 
 /**
  * Implementation of a record source for the Banner SIS which queries the Oracle database directly to
@@ -37,48 +43,87 @@ import java.util.List;
     havingValue = "banner")
 public class BannerCrossEnrollmentRecordSource extends CrossEnrollmentRecordSource {
 
-    @Value("${cvc.sis.url}")
-    private String oracleUrl;
+    /**
+     * Position of the activity date column selected by the incremental query
+     */
+    private static final int COLUMN_ACTIVITY_DATE = 5;
 
-    @Value("${cvc.sis.user}")
-    private String oracleUser;
+    @Autowired
+    private DataSource sisDataSource;
 
-    @Value("${cvc.sis.password}")
-    private String oraclePassword;
+    @Value("${cvc.sis.fetchSize}")
+    private int fetchSize;
 
     @Value("${cvc.cross-enrollment.sql.banner}")
     private String sqlQueryStagingTable;
 
+    @Value("${cvc.cross-enrollment.sql.banner-incremental}")
+    private String sqlQueryStagingTableIncremental;
+
+    @Value("${cvc.cross-enrollment.incremental.enabled}")
+    private boolean incremental;
+
+    @Value("${cvc.cross-enrollment.incremental.watermarkFile}")
+    private String pathWatermarkFile;
+
+    @Value("${cvc.cross-enrollment.incremental.lookback}")
+    private Duration lookback;
+
+    @Value("${cvc.cross-enrollment.fullResync}")
+    private boolean fullResync;
+
+    private final CrossEnrollmentRecordRowMapper recordRowMapper = new CrossEnrollmentRecordRowMapper();
+
+    /**
+     * Latest activity date read from the staging table during the most recent stream
+     */
+    private LocalDateTime latestActivityDate;
+
     @Override
-    public List<CrossEnrollmentRecord> getRecords() {
+    public Stream<CrossEnrollmentRecord> streamRecords() {
         try {
-            // Create Oracle datasource
-            OracleDataSource oracleDataSource = new OracleDataSource();
-
-            // Configure datasource
-            oracleDataSource.setURL(oracleUrl);
-            oracleDataSource.setUser(oracleUser);
-            oracleDataSource.setPassword(oraclePassword);
-
-            // Create a JdbcTemplate for interacting with the SIS database
-            JdbcTemplate jdbc = new JdbcTemplate(oracleDataSource);
-
-            // Execute SIS query into a collection
-            List<CrossEnrollmentRecord> crossEnrollmentRecords = new ArrayList<>();
-
-            jdbc
-                .queryForList(sqlQueryStagingTable)
-                .forEach(record -> {
-                    crossEnrollmentRecords.add(
-                        new CrossEnrollmentRecord(
-                            (String) record.get("root_account"),
-                            (String) record.get("existing_user_id"),
-                            (String) record.get("login_id"),
-                            (String) record.get("user_id")
-                        ));
-                });
-
-            return crossEnrollmentRecords;
+            // Read all records unless running in incremental mode
+            if(!incremental) {
+                log.debug("Querying staging table with fetch size {}", fetchSize);
+
+                return JdbcStreams.stream(
+                    sisDataSource,
+                    sqlQueryStagingTable,
+                    fetchSize,
+                    recordRowMapper);
+            }
+
+            // Resolve the watermark from the last successful import (ignored for a full resync), and step back
+            // by the lookback period to catch rows that were committed late
+            WatermarkStore watermarkStore = new WatermarkStore(Paths.get(pathWatermarkFile));
+            Optional<LocalDateTime> watermark = fullResync ? Optional.empty() : watermarkStore.read();
+            latestActivityDate = watermark.orElse(null);
+
+            LocalDateTime queryAfter = watermark
+                .map(value -> value.minus(lookback))
+                .orElse(LocalDateTime.of(1970, 1, 1, 0, 0));
+
+            log.info("Querying staging table for records with activity after {} (watermark = {})",
+                queryAfter,
+                watermark.map(LocalDateTime::toString).orElse("none"));
+
+            // Execute SIS query, tracking the latest activity date as rows are mapped into records
+            return JdbcStreams.stream(
+                sisDataSource,
+                sqlQueryStagingTableIncremental,
+                fetchSize,
+                (resultSet, rowNumber) -> {
+                    Timestamp activityDate = resultSet.getTimestamp(COLUMN_ACTIVITY_DATE);
+                    if(activityDate != null) {
+                        LocalDateTime activityDateTime = activityDate.toLocalDateTime();
+                        if(latestActivityDate == null || activityDateTime.isAfter(latestActivityDate)) {
+                            latestActivityDate = activityDateTime;
+                        }
+                    }
+
+                    return recordRowMapper.mapRow(resultSet, rowNumber);
+                },
+                Timestamp.valueOf(queryAfter));
         }
         catch(Exception anyException) {
             // Rethrow as unchecked exception
@@ -86,4 +131,15 @@ public class BannerCrossEnrollmentRecordSource extends CrossEnrollmentRecordSour
         }
     }
 
+    @Override
+    public void onImportCompleted() {
+        // Advance the watermark to the latest activity date that has now been imported
+        if(incremental && latestActivityDate != null) {
+            WatermarkStore watermarkStore = new WatermarkStore(Paths.get(pathWatermarkFile));
+            watermarkStore.write(latestActivityDate);
+
+            log.info("Saved activity date watermark {} to {}", latestActivityDate, watermarkStore.getPath());
+        }
+    }
+
 }
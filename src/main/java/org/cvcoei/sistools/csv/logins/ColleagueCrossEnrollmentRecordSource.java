@@ -16,19 +16,26 @@
 
 package org.cvcoei.sistools.csv.logins;
 
-import com.opencsv.bean.CsvToBeanBuilder;
+import com.google.common.collect.Iterators;
 import lombok.extern.log4j.Log4j2;
+import org.cvcoei.sistools.common.io.DirectoryWatcher;
 import org.cvcoei.sistools.common.io.FileUtilities;
 import org.cvcoei.sistools.common.io.ReaderWithCharset;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
 
+import java.io.Closeable;
+import java.io.IOException;
 import java.nio.file.*;
-import java.util.ArrayList;
-import java.util.List;
-import java.util.function.Supplier;
-import java.util.stream.Collectors;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * Implementation of a record source for the Colleague SIS which expects to find cross-enrollment records
@@ -41,7 +48,10 @@ import java.util.stream.Collectors;
     havingValue = "colleague")
 public class ColleagueCrossEnrollmentRecordSource extends CrossEnrollmentRecordSource {
 
-    private static final List<CrossEnrollmentRecord> EMPTY = new ArrayList<>();
+    /**
+     * Number of records each parser worker reads ahead of the consumer
+     */
+    static final int PARALLEL_PREFETCH = 256;
 
     @Value("${cvc.cross-enrollment.completedDirectory}")
     String propertyCompletedDirectory;
@@ -55,15 +65,28 @@ public class ColleagueCrossEnrollmentRecordSource extends CrossEnrollmentRecordS
     @Value("${cvc.cross-enrollment.inputPattern}")
     String propertyInputPattern;
 
-    @Override
-    public List<CrossEnrollmentRecord> getRecords() throws Exception {
-        // Resolve local filesystem
-        FileSystem filesystem = FileSystems.getDefault();
+    @Value("${cvc.cross-enrollment.parserThreads}")
+    int parserThreads;
+
+    @Value("${cvc.cross-enrollment.charsetSampleSize}")
+    int charsetSampleSize;
 
+    @Override
+    public Stream<CrossEnrollmentRecord> streamRecords() throws Exception {
         // Parse input directory
         Path inputDirectory = Paths.get(propertyInputDirectory);
         log.debug("Using {} for the input file directory", inputDirectory);
-        PathMatcher inputFileMatcher = filesystem.getPathMatcher("glob:" + propertyInputPattern);
+
+        // Find input files which match the provided pattern, ordered by name so that output is deterministic
+        List<Path> inputFiles = FileUtilities.findFiles(inputDirectory, getInputFileMatcher());
+        log.debug("Found {} input files {}", inputFiles.size(), inputFiles);
+
+        return streamRecords(inputFiles);
+    }
+
+    @Override
+    public Stream<CrossEnrollmentRecord> streamRecords(List<Path> inputFiles) throws Exception {
+        Path inputDirectory = Paths.get(propertyInputDirectory);
 
         // Setup completed directory
         Path completedDirectory = inputDirectory.resolve(propertyCompletedDirectory);
@@ -76,54 +99,18 @@ public class ColleagueCrossEnrollmentRecordSource extends CrossEnrollmentRecordS
         Files.createDirectories(failedDirectory);
 
         try {
-            // Define a supplier which creates a final collection of all the cross-enrollment records
-            Supplier<List<CrossEnrollmentRecord>> supplier = ArrayList::new;
-
-            // Walk input directory
-            return Files
-                .walk(inputDirectory, 1)
-
-                // Log the file getting scanned before any processing for debugging
-                .peek(path -> log.debug("Scanning input file {}", path))
-
-                // Capture only files which match the provided pattern
-                .filter(path -> Files.isRegularFile(path) && inputFileMatcher.matches(path))
-
-                // Convert each CSV into a stream of records, and merge into a single output
-                .flatMap(path -> {
-                    // Open CSV input file
-                    try(ReaderWithCharset readerWithCharset = FileUtilities.getReaderWithCharsetDetection(path)) {
-                        log.info("Processing cross-enrollment input file {} (charset = {})", path, readerWithCharset.getCharset());
-
-                        // Read entry(ies) from file
-                        List<CrossEnrollmentRecord> parsedRecords =
-                            new CsvToBeanBuilder<CrossEnrollmentRecord>(readerWithCharset.getReader())
-                                .withType(CrossEnrollmentRecord.class)
-                                .build()
-                                .parse();
-
-                        // Move successfully parsed file into completed directory
-                        FileUtilities.move(path, completedDirectory.resolve(path.getFileName()));
-
-                        log.info("Successfully parsed cross-enrollment file {}", path);
-                        return parsedRecords.stream();
-                    }
-                    catch(Exception exception) {
-                        // Move the file with the error back into the input directory
-                        FileUtilities.move(path, failedDirectory.resolve(path.getFileName()));
-
-                        log.error("Failed to parse {} - input filed has been moved to the failed directory", path, exception);
-                        return EMPTY.stream();
-                    }
-                })
-
-                // Log each discovered record
-                .peek(crossEnrollmentRecord -> {
-                    log.debug("Processing cross-enrollment record {}", crossEnrollmentRecord);
-                })
-
-                // Send to a final collection
-                .collect(Collectors.toCollection(supplier));
+            Stream<CrossEnrollmentRecord> records = parserThreads > 1
+                ? parseInParallel(inputFiles, completedDirectory, failedDirectory)
+                : parseInSequence(inputFiles, completedDirectory, failedDirectory);
+
+            // Log each discovered record (the extra stage is left out entirely unless debug logging is enabled)
+            if(!log.isDebugEnabled()) {
+                return records;
+            }
+
+            return records.peek(crossEnrollmentRecord -> {
+                log.debug("Processing cross-enrollment record {}", crossEnrollmentRecord);
+            });
         }
         catch(Exception anyException) {
             // Rethrow as unchecked exception
@@ -131,4 +118,227 @@ public class ColleagueCrossEnrollmentRecordSource extends CrossEnrollmentRecordS
         }
     }
 
+    @Override
+    public boolean isWatchSupported() {
+        return true;
+    }
+
+    @Override
+    public DirectoryWatcher watchInput(Duration quietPeriod) throws IOException {
+        Path inputDirectory = Paths.get(propertyInputDirectory);
+        log.info("Watching {} for new cross-enrollment input files", inputDirectory);
+
+        return new DirectoryWatcher(inputDirectory, getInputFileMatcher(), quietPeriod);
+    }
+
+    private PathMatcher getInputFileMatcher() {
+        return FileSystems.getDefault().getPathMatcher("glob:" + propertyInputPattern);
+    }
+
+    /**
+     * Lazily parse input files one after another. Files are chained into a single iterator (rather than using
+     * Stream.flatMap, which buffers each nested stream completely on Java 8 when consumed through an iterator),
+     * so that only the current record is held in memory regardless of how the stream is consumed.
+     * @param inputFiles Input files in the order their records should be emitted
+     * @param completedDirectory Directory for successfully parsed files
+     * @param failedDirectory Directory for files which failed to parse
+     * @return Stream of records from all files
+     */
+    private Stream<CrossEnrollmentRecord> parseInSequence(List<Path> inputFiles, Path completedDirectory, Path failedDirectory) {
+        final AtomicReference<InputFileIterator> currentInputFile = new AtomicReference<>();
+
+        Iterator<CrossEnrollmentRecord> records = Iterators.concat(Iterators.transform(
+            inputFiles.iterator(),
+            path -> {
+                InputFileIterator inputFileIterator = new InputFileIterator(path, completedDirectory, failedDirectory, charsetSampleSize);
+                currentInputFile.set(inputFileIterator);
+                return inputFileIterator;
+            }));
+
+        return StreamSupport
+            .stream(Spliterators.spliteratorUnknownSize(records, Spliterator.ORDERED), false)
+            .onClose(() -> {
+                // Release the file being read if the stream is closed early
+                InputFileIterator inputFileIterator = currentInputFile.get();
+                if(inputFileIterator != null) {
+                    inputFileIterator.close();
+                }
+            });
+    }
+
+    /**
+     * Parse input files concurrently using a bounded pool of workers. Each file is parsed (and moved to the
+     * completed or failed directory) by a worker, and records are emitted in file order. Workers read ahead at
+     * most {@link #PARALLEL_PREFETCH} records of each file while waiting for them to be consumed, so memory use
+     * does not depend on the size of the files.
+     * @param inputFiles Input files in the order their records should be emitted
+     * @param completedDirectory Directory for successfully parsed files
+     * @param failedDirectory Directory for files which failed to parse
+     * @return Stream of records from all files
+     */
+    private Stream<CrossEnrollmentRecord> parseInParallel(List<Path> inputFiles, Path completedDirectory, Path failedDirectory) {
+        log.debug("Parsing {} input files with {} workers", inputFiles.size(), parserThreads);
+        Scheduler scheduler = Schedulers.newParallel("colleague-parser", parserThreads);
+
+        return Flux
+            .fromIterable(inputFiles)
+            .flatMapSequential(
+                path -> Flux
+                    .using(
+                        () -> new InputFileIterator(path, completedDirectory, failedDirectory, charsetSampleSize),
+                        inputFileIterator -> Flux.fromIterable(() -> inputFileIterator),
+                        InputFileIterator::close)
+                    .subscribeOn(scheduler),
+                parserThreads,
+                PARALLEL_PREFETCH)
+            .doFinally(signal -> scheduler.dispose())
+            .toStream(PARALLEL_PREFETCH);
+    }
+
+    /**
+     * Iterator which parses records from a single input file. Files are all-or-nothing: on first access the whole
+     * file is parsed once into a {@link CrossEnrollmentRecordSpool}, and a file which cannot be opened or has a
+     * record that fails to parse is moved into the failed directory without contributing any records. Otherwise
+     * the records are passed on from the spool, and the file is moved into the completed directory when they have
+     * all been read.
+     */
+    private static class InputFileIterator implements Iterator<CrossEnrollmentRecord>, Closeable {
+
+        private final Path path;
+
+        private final Path completedDirectory;
+
+        private final Path failedDirectory;
+
+        private final int charsetSampleSize;
+
+        private ReaderWithCharset readerWithCharset;
+
+        private CrossEnrollmentRecordSpool spool;
+
+        private CrossEnrollmentRecord nextRecord;
+
+        private volatile boolean finished = false;
+
+        private boolean spooled = false;
+
+        private long recordCount = 0;
+
+        InputFileIterator(Path path, Path completedDirectory, Path failedDirectory, int charsetSampleSize) {
+            this.path = path;
+            this.completedDirectory = completedDirectory;
+            this.failedDirectory = failedDirectory;
+            this.charsetSampleSize = charsetSampleSize;
+        }
+
+        @Override
+        public boolean hasNext() {
+            if(nextRecord != null) {
+                return true;
+            }
+
+            if(finished) {
+                return false;
+            }
+
+            try {
+                // Parse the whole file on first access, so that parsing errors are found before any record is
+                // passed on
+                if(!spooled) {
+                    spool();
+                    spooled = true;
+                }
+
+                if(spool.hasNext()) {
+                    nextRecord = spool.next();
+                    return true;
+                }
+
+                // Move successfully parsed file into completed directory
+                close();
+                FileUtilities.move(path, completedDirectory.resolve(path.getFileName()));
+
+                log.info("Successfully parsed cross-enrollment file {} ({} records)", path, recordCount);
+                return false;
+            }
+            catch(Exception exception) {
+                // The iterator was closed while reading because the stream was cancelled, so leave the file to be
+                // read again on the next run
+                if(finished) {
+                    log.warn("Stopped reading {} before the end - input file has been left in place", path);
+                    return false;
+                }
+
+                close();
+
+                // The file parsed, but its records could not be read back after some were already passed on
+                if(spooled) {
+                    throw new RuntimeException(
+                        "Failed to read parsed records of " + path + " - input file has been left in place",
+                        exception);
+                }
+
+                // Move the file with the error into the failed directory
+                FileUtilities.move(path, failedDirectory.resolve(path.getFileName()));
+                log.error("Failed to parse {} - input filed has been moved to the failed directory", path, exception);
+
+                return false;
+            }
+        }
+
+        /**
+         * Parse every record in the file into the spool, and rewind the spool to read them back.
+         */
+        private void spool() throws Exception {
+            readerWithCharset = FileUtilities.getReaderWithCharsetDetection(path, charsetSampleSize);
+            log.info("Processing cross-enrollment input file {} (charset = {})", path, readerWithCharset.getCharset());
+
+            spool = new CrossEnrollmentRecordSpool();
+            Iterator<CrossEnrollmentRecord> records = new CrossEnrollmentCsvReader(readerWithCharset.getReader());
+            while(records.hasNext()) {
+                spool.write(records.next());
+            }
+
+            readerWithCharset.close();
+            readerWithCharset = null;
+            spool.rewind();
+        }
+
+        @Override
+        public CrossEnrollmentRecord next() {
+            if(!hasNext()) {
+                throw new NoSuchElementException();
+            }
+
+            CrossEnrollmentRecord record = nextRecord;
+            nextRecord = null;
+            recordCount++;
+            return record;
+        }
+
+        @Override
+        public void close() {
+            finished = true;
+
+            try {
+                if(readerWithCharset != null) {
+                    readerWithCharset.close();
+                }
+            }
+            catch(IOException ioException) {
+                log.warn("Failed to close input file {}", path, ioException);
+            }
+
+            try {
+                if(spool != null) {
+                    spool.close();
+                }
+            }
+            catch(IOException ioException) {
+                log.warn("Failed to remove spooled records of {}", path, ioException);
+            }
+        }
+
+    }
+
 }
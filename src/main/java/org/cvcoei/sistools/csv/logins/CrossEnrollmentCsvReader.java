@@ -0,0 +1,168 @@
+/*
+ * Copyright 2020 California Community Colleges Chancellor's Office
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.cvcoei.sistools.csv.logins;
+
+import com.opencsv.CSVReader;
+import com.opencsv.exceptions.CsvException;
+import com.opencsv.exceptions.CsvRequiredFieldEmptyException;
+import org.apache.commons.lang3.StringUtils;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.*;
+
+/**
+ * Reads cross-enrollment records from a CSV file provided by an integration partner. The header is resolved
+ * to column positions once, and each line is then mapped directly into a record, avoiding the reflective
+ * per-line work done by OpenCSV bean binding. Lines are tokenized with the standard OpenCSV parser.
+ *
+ * Validation matches the previous annotation based binding: column names are matched without regard to case,
+ * all four columns are required in the header, every line must have the same number of fields as the header,
+ * and no required value may be blank.
+ */
+public class CrossEnrollmentCsvReader implements Iterator<CrossEnrollmentRecord>, Closeable {
+
+    public static final String COLUMN_ROOT_ACCOUNT = "canvasRootAccount";
+
+    public static final String COLUMN_HOME_COLLEGE_ID = "homeSISUserId";
+
+    public static final String COLUMN_HOME_COLLEGE_LOGIN_ID = "canvasLoginId";
+
+    public static final String COLUMN_TEACHING_COLLEGE_ID = "studentid";
+
+    private final CSVReader csvReader;
+
+    private final int headerLength;
+
+    private final int indexRootAccount;
+
+    private final int indexHomeCollegeId;
+
+    private final int indexHomeCollegeLoginId;
+
+    private final int indexTeachingCollegeId;
+
+    private String[] nextLine;
+
+    private boolean endOfFile = false;
+
+    /**
+     * Create a reader, and immediately read and validate the header line.
+     * @param reader Source of CSV content
+     * @throws IOException
+     * @throws CsvException If the header is missing any of the required columns
+     */
+    public CrossEnrollmentCsvReader(Reader reader) throws IOException, CsvException {
+        this.csvReader = new CSVReader(reader);
+
+        // Read header
+        String[] header = csvReader.readNext();
+        if(header == null) {
+            header = new String[0];
+        }
+
+        headerLength = header.length;
+
+        // Resolve the position of each column (the last occurrence wins if a column is repeated)
+        Map<String, Integer> headerIndex = new HashMap<>();
+        for(int i = 0; i < header.length; i++) {
+            headerIndex.put(header[i].toUpperCase(), i);
+        }
+
+        indexRootAccount = headerIndex.getOrDefault(COLUMN_ROOT_ACCOUNT.toUpperCase(), -1);
+        indexHomeCollegeId = headerIndex.getOrDefault(COLUMN_HOME_COLLEGE_ID.toUpperCase(), -1);
+        indexHomeCollegeLoginId = headerIndex.getOrDefault(COLUMN_HOME_COLLEGE_LOGIN_ID.toUpperCase(), -1);
+        indexTeachingCollegeId = headerIndex.getOrDefault(COLUMN_TEACHING_COLLEGE_ID.toUpperCase(), -1);
+
+        // Validate all required columns are present
+        SortedSet<String> missingColumns = new TreeSet<>();
+        if(indexRootAccount < 0) missingColumns.add(COLUMN_ROOT_ACCOUNT.toUpperCase());
+        if(indexHomeCollegeId < 0) missingColumns.add(COLUMN_HOME_COLLEGE_ID.toUpperCase());
+        if(indexHomeCollegeLoginId < 0) missingColumns.add(COLUMN_HOME_COLLEGE_LOGIN_ID.toUpperCase());
+        if(indexTeachingCollegeId < 0) missingColumns.add(COLUMN_TEACHING_COLLEGE_ID.toUpperCase());
+
+        if(!missingColumns.isEmpty()) {
+            throw new CsvRequiredFieldEmptyException(
+                CrossEnrollmentRecord.class,
+                String.format(
+                    "Header is missing required fields %s. The list of headers encountered is [%s].",
+                    missingColumns,
+                    String.join(",", header)));
+        }
+    }
+
+    @Override
+    public boolean hasNext() {
+        if(nextLine == null && !endOfFile) {
+            try {
+                nextLine = csvReader.readNext();
+                endOfFile = nextLine == null;
+            }
+            catch(IOException | CsvException exception) {
+                throw new RuntimeException("Error reading CSV line: " + (csvReader.getLinesRead() + 1), exception);
+            }
+        }
+
+        return nextLine != null;
+    }
+
+    @Override
+    public CrossEnrollmentRecord next() {
+        if(!hasNext()) {
+            throw new NoSuchElementException();
+        }
+
+        String[] line = nextLine;
+        nextLine = null;
+
+        try {
+            // Validate the line against the header
+            if(line.length != headerLength) {
+                throw new CsvRequiredFieldEmptyException(
+                    CrossEnrollmentRecord.class,
+                    "Number of data fields does not match number of headers.");
+            }
+
+            return new CrossEnrollmentRecord(
+                requireValue(line[indexRootAccount], "canvasRootAccount"),
+                requireValue(line[indexHomeCollegeId], "homeCollegeId"),
+                requireValue(line[indexHomeCollegeLoginId], "homeCollegeLoginId"),
+                requireValue(line[indexTeachingCollegeId], "teachingCollegeId"));
+        }
+        catch(CsvRequiredFieldEmptyException exception) {
+            throw new RuntimeException(
+                String.format("Error parsing CSV line: %d. [%s]", csvReader.getLinesRead(), String.join(",", line)),
+                exception);
+        }
+    }
+
+    private static String requireValue(String value, String fieldName) throws CsvRequiredFieldEmptyException {
+        if(StringUtils.isBlank(value)) {
+            throw new CsvRequiredFieldEmptyException(
+                CrossEnrollmentRecord.class,
+                String.format("Field '%s' is mandatory but no value was provided.", fieldName));
+        }
+
+        return value;
+    }
+
+    @Override
+    public void close() throws IOException {
+        csvReader.close();
+    }
+
+}
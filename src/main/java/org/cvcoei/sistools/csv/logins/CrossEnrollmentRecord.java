@@ -17,25 +17,26 @@
 package org.cvcoei.sistools.csv.logins;
 
 import com.google.common.base.MoreObjects;
-import com.opencsv.bean.CsvBindByName;
+import com.google.common.base.Strings;
+import com.google.common.hash.Hashing;
+
+import java.nio.charset.StandardCharsets;
 
 /**
  * Immutable record representing a cross enrollment record received from an external input such as an SIS
- * database or flat file delivered by a CVC integration partner. Includes OpenCSV annotations for use with
- * reading from a local input file.
+ * database or flat file delivered by a CVC integration partner. Local input files are mapped into records by
+ * {@link CrossEnrollmentCsvReader}.
  */
 public class CrossEnrollmentRecord {
 
-    @CsvBindByName(column = "canvasRootAccount", required = true)
+    private static final char FIELD_SEPARATOR = '\u0000';
+
     private String canvasRootAccount;
 
-    @CsvBindByName(column = "homeSISUserId", required = true)
     private String homeCollegeId;
 
-    @CsvBindByName(column = "canvasLoginId", required = true)
     private String homeCollegeLoginId;
 
-    @CsvBindByName(column = "studentid", required = true)
     private String teachingCollegeId;
 
     public CrossEnrollmentRecord() {
@@ -80,6 +81,26 @@ public class CrossEnrollmentRecord {
         this.teachingCollegeId = teachingCollegeId;
     }
 
+    /**
+     * Compute a stable 64-bit fingerprint of the record content, which is used to recognize records that have
+     * already been delivered to Canvas.
+     * @return Fingerprint of the record
+     */
+    public long fingerprint() {
+        return Hashing
+            .farmHashFingerprint64()
+            .newHasher()
+            .putString(Strings.nullToEmpty(teachingCollegeId), StandardCharsets.UTF_8)
+            .putChar(FIELD_SEPARATOR)
+            .putString(Strings.nullToEmpty(homeCollegeLoginId), StandardCharsets.UTF_8)
+            .putChar(FIELD_SEPARATOR)
+            .putString(Strings.nullToEmpty(homeCollegeId), StandardCharsets.UTF_8)
+            .putChar(FIELD_SEPARATOR)
+            .putString(Strings.nullToEmpty(canvasRootAccount), StandardCharsets.UTF_8)
+            .hash()
+            .asLong();
+    }
+
     @Override
     public String toString() {
         return MoreObjects.toStringHelper(this)
@@ -0,0 +1,87 @@
+/*
+ * Copyright 2020 California Community Colleges Chancellor's Office
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.cvcoei.sistools.csv.logins;
+
+import org.springframework.jdbc.core.RowMapper;
+
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+
+/**
+ * Maps SIS query rows directly into cross-enrollment records by column position rather than by column label,
+ * which avoids label lookups and intermediate maps for every row. Queries must select the columns in the same
+ * order as the logins.csv layout: user_id, login_id, existing_user_id, root_account.
+ *
+ * Because a site can override the queries, the column labels of each result set are checked once on its first
+ * row, so that a query selecting the columns in a different order fails instead of swapping values in the
+ * records sent to Canvas.
+ */
+public class CrossEnrollmentRecordRowMapper implements RowMapper<CrossEnrollmentRecord> {
+
+    public static final int COLUMN_USER_ID = 1;
+
+    public static final int COLUMN_LOGIN_ID = 2;
+
+    public static final int COLUMN_EXISTING_USER_ID = 3;
+
+    public static final int COLUMN_ROOT_ACCOUNT = 4;
+
+    private static final String[] COLUMN_LABELS = { "user_id", "login_id", "existing_user_id", "root_account" };
+
+    @Override
+    public CrossEnrollmentRecord mapRow(ResultSet resultSet, int rowNumber) throws SQLException {
+        if(rowNumber == 0) {
+            checkColumnLabels(resultSet.getMetaData());
+        }
+
+        return new CrossEnrollmentRecord(
+            resultSet.getString(COLUMN_ROOT_ACCOUNT),
+            resultSet.getString(COLUMN_EXISTING_USER_ID),
+            resultSet.getString(COLUMN_LOGIN_ID),
+            resultSet.getString(COLUMN_USER_ID));
+    }
+
+    /**
+     * Check that a result set has the expected columns in the expected positions. Labels are compared without
+     * regard to case, since databases differ in how they report unquoted aliases. Additional columns after the
+     * expected ones are allowed.
+     * @param metaData Metadata of the result set
+     * @throws SQLException
+     */
+    static void checkColumnLabels(ResultSetMetaData metaData) throws SQLException {
+        if(metaData.getColumnCount() < COLUMN_LABELS.length) {
+            throw new RuntimeException(String.format(
+                "SIS query selects %d columns, but must select %s in this order",
+                metaData.getColumnCount(),
+                String.join(", ", COLUMN_LABELS)));
+        }
+
+        for(int i = 0; i < COLUMN_LABELS.length; i++) {
+            String columnLabel = metaData.getColumnLabel(i + 1);
+            if(!COLUMN_LABELS[i].equalsIgnoreCase(columnLabel)) {
+                throw new RuntimeException(String.format(
+                    "SIS query selects column %s at position %d where %s is expected (columns must be %s in this order)",
+                    columnLabel,
+                    i + 1,
+                    COLUMN_LABELS[i],
+                    String.join(", ", COLUMN_LABELS)));
+            }
+        }
+    }
+
+}
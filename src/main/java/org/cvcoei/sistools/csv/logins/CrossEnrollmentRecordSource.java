@@ -16,10 +16,79 @@
 
 package org.cvcoei.sistools.csv.logins;
 
+import org.cvcoei.sistools.common.io.DirectoryWatcher;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
 import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 public abstract class CrossEnrollmentRecordSource {
 
-    public abstract List<CrossEnrollmentRecord> getRecords() throws Exception;
+    /**
+     * Open a lazy stream of cross-enrollment records from the underlying source. Records are produced as the
+     * stream is consumed so that large inputs never need to be held in memory all at once. The stream may hold
+     * open resources such as database connections or files, and callers must close it when finished
+     * (for example with try-with-resources).
+     * @return Stream of records
+     * @throws Exception
+     */
+    public abstract Stream<CrossEnrollmentRecord> streamRecords() throws Exception;
+
+    /**
+     * Open a lazy stream of the cross-enrollment records in the given input files only, for sources which receive
+     * their records as files dropped into a directory. Used in watch mode, so that only the files released by the
+     * {@link DirectoryWatcher} are read, and not files which started arriving since. The default implementation
+     * throws an UnsupportedOperationException.
+     * @param inputFiles Input files to read, in the order their records should be emitted
+     * @return Stream of records, which callers must close when finished
+     * @throws Exception
+     */
+    public Stream<CrossEnrollmentRecord> streamRecords(List<Path> inputFiles) throws Exception {
+        throw new UnsupportedOperationException("Reading input files is not supported for the configured SIS type");
+    }
+
+    /**
+     * Read all cross-enrollment records into a collection. This is a convenience adapter over
+     * {@link #streamRecords()} and should be avoided for large inputs.
+     * @return List of all records from the source
+     * @throws Exception
+     */
+    public List<CrossEnrollmentRecord> getRecords() throws Exception {
+        try(Stream<CrossEnrollmentRecord> records = streamRecords()) {
+            return records.collect(Collectors.toList());
+        }
+    }
+
+    /**
+     * Notification that the records from the most recent stream have been successfully imported into Canvas.
+     * Sources can override this to persist their progress, so that the next run only reads newer records.
+     * The default implementation does nothing.
+     * @throws Exception
+     */
+    public void onImportCompleted() throws Exception {
+    }
+
+    /**
+     * @return True if the source receives its records as files dropped into a directory, and so supports
+     * {@link #watchInput(Duration)} and {@link #streamRecords(List)}. The default implementation returns false.
+     */
+    public boolean isWatchSupported() {
+        return false;
+    }
+
+    /**
+     * Start watching for new input, for sources which receive their records as files dropped into a directory.
+     * Only called when {@link #isWatchSupported()} returns true, which is checked when the import starts. The
+     * default implementation throws an UnsupportedOperationException.
+     * @param quietPeriod Time without changes before dropped files are considered complete
+     * @return Watcher which releases batches of new input files, and must be closed when finished
+     * @throws IOException
+     */
+    public DirectoryWatcher watchInput(Duration quietPeriod) throws IOException {
+        throw new UnsupportedOperationException("Watch mode is not supported for the configured SIS type");
+    }
 
 }
@@ -0,0 +1,124 @@
+/*
+ * Copyright 2020 California Community Colleges Chancellor's Office
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.cvcoei.sistools.csv.logins;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Temporary file holding the records parsed from one input file, so that the file is parsed only once and its
+ * records are still only passed on after every line has parsed. Records are written in a compact binary form,
+ * which is much cheaper to read back than parsing the CSV again, and the file is deleted when the spool is closed.
+ */
+class CrossEnrollmentRecordSpool implements Iterator<CrossEnrollmentRecord>, Closeable {
+
+    private final Path spoolFile;
+
+    private DataOutputStream output;
+
+    private DataInputStream input;
+
+    private long writtenCount = 0;
+
+    private long readCount = 0;
+
+    CrossEnrollmentRecordSpool() throws IOException {
+        spoolFile = Files.createTempFile("cross-enrollment-", ".spool");
+        output = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(spoolFile)));
+    }
+
+    void write(CrossEnrollmentRecord record) throws IOException {
+        writeField(record.getCanvasRootAccount());
+        writeField(record.getHomeCollegeId());
+        writeField(record.getHomeCollegeLoginId());
+        writeField(record.getTeachingCollegeId());
+        writtenCount++;
+    }
+
+    /**
+     * Finish writing, and start reading the records back in the order they were written.
+     * @throws IOException
+     */
+    void rewind() throws IOException {
+        output.close();
+        output = null;
+
+        input = new DataInputStream(new BufferedInputStream(Files.newInputStream(spoolFile)));
+    }
+
+    @Override
+    public boolean hasNext() {
+        return input != null && readCount < writtenCount;
+    }
+
+    @Override
+    public CrossEnrollmentRecord next() {
+        if(!hasNext()) {
+            throw new NoSuchElementException();
+        }
+
+        try {
+            CrossEnrollmentRecord record = new CrossEnrollmentRecord(
+                readField(),
+                readField(),
+                readField(),
+                readField());
+            readCount++;
+            return record;
+        }
+        catch(IOException ioException) {
+            // Rethrow as unchecked exception
+            throw new RuntimeException(ioException);
+        }
+    }
+
+    private void writeField(String value) throws IOException {
+        output.writeBoolean(value != null);
+        if(value != null) {
+            output.writeUTF(value);
+        }
+    }
+
+    private String readField() throws IOException {
+        return input.readBoolean() ? input.readUTF() : null;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            if(output != null) {
+                output.close();
+            }
+
+            if(input != null) {
+                input.close();
+            }
+        }
+        finally {
+            Files.deleteIfExists(spoolFile);
+        }
+    }
+
+}
@@ -16,28 +16,44 @@
 
 package org.cvcoei.sistools.csv.logins;
 
-import com.opencsv.CSVWriter;
+import com.google.gson.JsonObject;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import lombok.extern.log4j.Log4j2;
 import okhttp3.HttpUrl;
-import okhttp3.MediaType;
 import okhttp3.Request;
 import okhttp3.RequestBody;
-import org.apache.logging.log4j.LogManager;
-import org.apache.logging.log4j.Logger;
+import org.cvcoei.sistools.common.canvas.SisImport;
+import org.cvcoei.sistools.common.canvas.SisImportErrorsService;
+import org.cvcoei.sistools.common.config.HttpClientConfiguration;
+import org.cvcoei.sistools.common.config.MetricsConfiguration;
+import org.cvcoei.sistools.common.config.SisDataSourceRegistry;
+import org.cvcoei.sistools.common.config.TenantEnvironments;
+import org.cvcoei.sistools.common.expression.ExpressionEvalService;
 import org.cvcoei.sistools.common.http.HttpApiService;
+import org.cvcoei.sistools.common.io.DirectoryWatcher;
+import org.cvcoei.sistools.common.io.FingerprintStore;
 import org.cvcoei.sistools.common.json.JsonService;
+import org.cvcoei.sistools.common.metrics.MetricsExportService;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.ApplicationArguments;
 import org.springframework.boot.ApplicationRunner;
-import org.springframework.boot.autoconfigure.SpringBootApplication;
-import org.springframework.boot.autoconfigure.jdbc.DataSourceAutoConfiguration;
-import org.springframework.boot.autoconfigure.jdbc.DataSourceTransactionManagerAutoConfiguration;
-import org.springframework.boot.autoconfigure.jdbc.JndiDataSourceAutoConfiguration;
-import org.springframework.boot.autoconfigure.jdbc.XADataSourceAutoConfiguration;
-import org.springframework.boot.autoconfigure.orm.jpa.HibernateJpaAutoConfiguration;
-import org.springframework.scheduling.annotation.EnableAsync;
+import org.springframework.boot.SpringBootConfiguration;
+import org.springframework.boot.autoconfigure.context.PropertyPlaceholderAutoConfiguration;
+import org.springframework.boot.convert.ApplicationConversionService;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.context.annotation.Import;
+import org.springframework.core.env.ConfigurableEnvironment;
 import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
 
 import java.io.IOException;
 import java.nio.charset.Charset;
@@ -45,25 +61,204 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
-
-@SpringBootApplication(
-    scanBasePackages = { "org.cvcoei.sistools.common", "org.cvcoei.sistools.csv.logins" },
-    proxyBeanMethods = false,
-    exclude = {
-        DataSourceAutoConfiguration.class,
-        DataSourceTransactionManagerAutoConfiguration.class,
-        HibernateJpaAutoConfiguration.class,
-        JndiDataSourceAutoConfiguration.class,
-        XADataSourceAutoConfiguration.class
-    })
-@EnableAsync
+import java.util.Set;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * Spring application for generating logins.csv. Beans are registered explicitly rather than through component
+ * scanning and auto-configuration, and are created lazily, so that a run with nothing to import starts quickly.
+ * The application context holds the beans shared by every tenant (such as the HTTP client and SIS connection
+ * pools), and each import runs in a child context created from {@link LoginsCsvJob}.
+ */
+@SpringBootConfiguration(proxyBeanMethods = false)
+@Import({
+    PropertyPlaceholderAutoConfiguration.class,
+    HttpClientConfiguration.class,
+    MetricsConfiguration.class,
+    MetricsExportService.class,
+    SisDataSourceRegistry.class,
+    JsonService.class,
+    ExpressionEvalService.class,
+    HttpApiService.class,
+    SisImportErrorsService.class,
+    LoginsCsvApplication.TenantRunner.class
+})
 @Log4j2
 public class LoginsCsvApplication {
 
+    /**
+     * Runs the import for each tenant configured under `cvc.tenants`, or a single import when there are no
+     * tenants. Tenants run at the same time on a bounded number of threads, and a failed tenant does not stop
+     * the others.
+     */
     @Service
+    public static class TenantRunner implements ApplicationRunner {
+
+        /**
+         * Output paths which are placed in a directory named after the tenant, unless the tenant sets them
+         */
+        final static List<String> TENANT_PATH_PROPERTIES = Arrays.asList(
+            "cvc.cross-enrollment.outputFile",
+            "cvc.cross-enrollment.dedup.storeFile",
+            "cvc.cross-enrollment.incremental.watermarkFile");
+
+        @Value("${cvc.tenantConcurrency}")
+        int tenantConcurrency;
+
+        @Value("${cvc.cross-enrollment.watch.enabled}")
+        boolean watchEnabled;
+
+        @Autowired
+        ConfigurableApplicationContext applicationContext;
+
+        @Override
+        public void run(ApplicationArguments args) throws Exception {
+            ConfigurableEnvironment environment = applicationContext.getEnvironment();
+            Set<String> tenantNames = TenantEnvironments.getTenantNames(environment);
+
+            // Without tenants, run a single import with the shared configuration
+            if(tenantNames.isEmpty()) {
+                runJob(environment, args);
+                return;
+            }
+
+            checkInputDirectories(environment, tenantNames);
+
+            // Watch mode never finishes an import run, so every tenant needs its own thread
+            int concurrency = watchEnabled ? tenantNames.size() : Math.max(1, tenantConcurrency);
+            log.info("Running {} tenants {} with concurrency {}", tenantNames.size(), tenantNames, concurrency);
+
+            Map<String, Throwable> failures = new ConcurrentSkipListMap<>();
+            Scheduler scheduler = Schedulers.newBoundedElastic(concurrency, Integer.MAX_VALUE, "tenant");
+
+            try {
+                Flux.fromIterable(tenantNames)
+                    .flatMap(tenantName -> Mono
+                        .fromCallable(() -> runTenant(environment, tenantName, args))
+                        .subscribeOn(scheduler)
+                        .onErrorResume(exception -> {
+                            log.error("Tenant {} failed", tenantName, exception);
+                            failures.put(tenantName, exception);
+                            return Mono.empty();
+                        }),
+                        concurrency)
+                    .blockLast();
+            }
+            finally {
+                scheduler.dispose();
+            }
+
+            log.info(
+                "Tenant summary: {} succeeded, {} failed{}",
+                tenantNames.size() - failures.size(),
+                failures.size(),
+                failures.isEmpty() ? "" : " " + failures.keySet());
+
+            if(!failures.isEmpty()) {
+                throw new RuntimeException(String.format(
+                    "%d of %d tenants failed (see logs for detail)", failures.size(), tenantNames.size()));
+            }
+        }
+
+        /**
+         * Check that no two Colleague tenants read the same input directory, which would make them take each
+         * other's files. Tenants inherit the shared input directory unless they set their own.
+         * @param environment Shared environment
+         * @param tenantNames Names of the configured tenants
+         * @throws IllegalStateException if two tenants read the same input directory
+         */
+        static void checkInputDirectories(ConfigurableEnvironment environment, Set<String> tenantNames) {
+            Map<Path, String> tenantsByInputDirectory = new HashMap<>();
+
+            for(String tenantName : tenantNames) {
+                ConfigurableEnvironment tenantEnvironment = TenantEnvironments.createTenantEnvironment(
+                    environment,
+                    tenantName,
+                    TenantEnvironments.getTenantProperties(environment, tenantName));
+
+                String inputDirectory = tenantEnvironment.getProperty("cvc.cross-enrollment.inputDirectory");
+                if(!"colleague".equals(tenantEnvironment.getProperty("cvc.sis.type")) || inputDirectory == null) {
+                    continue;
+                }
+
+                Path path = Paths.get(inputDirectory).toAbsolutePath().normalize();
+                String otherTenantName = tenantsByInputDirectory.putIfAbsent(path, tenantName);
+                if(otherTenantName != null) {
+                    throw new IllegalStateException(String.format(
+                        "Tenants %s and %s both read input directory %s - set "
+                            + "cvc.tenants.NAME.cross-enrollment.inputDirectory for each Colleague tenant",
+                        otherTenantName,
+                        tenantName,
+                        path));
+                }
+            }
+        }
+
+        private String runTenant(ConfigurableEnvironment environment, String tenantName, ApplicationArguments args)
+                throws Exception {
+            Map<String, Object> tenantProperties = TenantEnvironments.getTenantProperties(environment, tenantName);
+
+            // Keep the output of each tenant apart by default
+            for(String propertyName : TENANT_PATH_PROPERTIES) {
+                String sharedPath = environment.getProperty(propertyName);
+
+                if(!tenantProperties.containsKey(propertyName) && sharedPath != null) {
+                    Path path = Paths.get(sharedPath);
+                    Path parent = path.getParent() != null ? path.getParent() : Paths.get("");
+                    tenantProperties.put(propertyName, parent.resolve(tenantName).resolve(path.getFileName()).toString());
+                }
+            }
+
+            // Name the thread after the tenant, so that log lines show which tenant they belong to
+            Thread thread = Thread.currentThread();
+            String threadName = thread.getName();
+            thread.setName("tenant-" + tenantName);
+
+            try {
+                log.info("Starting tenant {}", tenantName);
+                runJob(TenantEnvironments.createTenantEnvironment(environment, tenantName, tenantProperties), args);
+                log.info("Finished tenant {}", tenantName);
+            }
+            finally {
+                thread.setName(threadName);
+            }
+
+            return tenantName;
+        }
+
+        /**
+         * Run one import in a child context, which sees the shared beans of the application context.
+         * @param environment Configuration of the import
+         * @param args Application arguments
+         * @throws Exception
+         */
+        private void runJob(ConfigurableEnvironment environment, ApplicationArguments args) throws Exception {
+            try(AnnotationConfigApplicationContext jobContext = new AnnotationConfigApplicationContext()) {
+                jobContext.setEnvironment(environment);
+                jobContext.setParent(applicationContext);
+                jobContext.getBeanFactory().setConversionService(ApplicationConversionService.getSharedInstance());
+                jobContext.register(LoginsCsvJob.class);
+                jobContext.refresh();
+
+                jobContext.getBean(Runner.class).run(args);
+            }
+        }
+    }
+
+    /**
+     * Imports the records of one tenant. Registered in the child context of each import by {@link LoginsCsvJob}
+     * (rather than as a service of this application), so that it sees the configuration of its tenant.
+     */
     public static class Runner implements ApplicationRunner {
 
         public final static String[] CSV_HEADER = new String[] {
@@ -72,7 +267,23 @@ public class LoginsCsvApplication {
             "existing_user_id",
             "root_account" };
 
-        private final Logger sisErrorsLog = LogManager.getLogger("canvas.sis-import.errors");
+        /**
+         * Name of the CSV file inside a compressed upload
+         */
+        public final static String CSV_ENTRY_NAME = "logins.csv";
+
+        /**
+         * Upload mode which generates the CSV on the fly while it is being uploaded
+         */
+        final static String UPLOAD_MODE_STREAM = "stream";
+
+        /**
+         * Canvas workflow states which indicate an import finished processing (individual rows may still have
+         * been reported as errors or warnings)
+         */
+        final static List<String> IMPORT_COMPLETED_STATES = Arrays.asList(
+            "imported",
+            "imported_with_messages");
 
         @Value("${cvc.canvas.accountId}")
         String canvasAccountId;
@@ -83,14 +294,75 @@ public class LoginsCsvApplication {
         @Value("${cvc.canvas.host}")
         String canvasHost;
 
+        @Value("${cvc.canvas.scheme}")
+        String canvasScheme;
+
+        @Value("${cvc.canvas.port}")
+        int canvasPort;
+
         @Value("${cvc.cross-enrollment.outputFile}")
         String pathOutputFile;
 
+        @Value("${cvc.cross-enrollment.uploadMode}")
+        String uploadMode;
+
+        @Value("${cvc.cross-enrollment.compression}")
+        String compressionName;
+
+        @Value("${cvc.cross-enrollment.batch.maxRecords}")
+        int batchMaxRecords;
+
+        @Value("${cvc.cross-enrollment.batch.byRootAccount}")
+        boolean batchByRootAccount;
+
+        @Value("${cvc.cross-enrollment.batch.concurrency}")
+        int batchConcurrency;
+
+        @Value("${cvc.cross-enrollment.dedup.enabled}")
+        boolean dedupEnabled;
+
+        @Value("${cvc.cross-enrollment.dedup.storeFile}")
+        String pathDedupStoreFile;
+
+        @Value("${cvc.cross-enrollment.dedup.retentionDays}")
+        int dedupRetentionDays;
+
+        @Value("${cvc.cross-enrollment.fullResync}")
+        boolean fullResync;
+
+        /**
+         * Whether the fingerprint store has been saved by this run, after which a full resync no longer applies to
+         * later imports of the same run (in watch mode)
+         */
+        boolean fingerprintStoreSaved = false;
+
+        @Value("${cvc.cross-enrollment.watch.enabled}")
+        boolean watchEnabled;
+
+        @Value("${cvc.cross-enrollment.watch.quietPeriod}")
+        Duration watchQuietPeriod;
+
+        @Value("${cvc.sis.type:unknown}")
+        String sisType;
+
+        @Value("${cvc.tenant:default}")
+        String tenantName;
+
+        @Autowired
+        MeterRegistry meterRegistry;
+
         @Autowired
-        HttpApiService httpApiService;
+        MetricsExportService metricsExportService;
 
+        // HTTP services are only created once there is something to deliver to Canvas
         @Autowired
-        JsonService jsonService;
+        ObjectProvider<HttpApiService> httpApiService;
+
+        @Autowired
+        ObjectProvider<JsonService> jsonService;
+
+        @Autowired
+        ObjectProvider<SisImportErrorsService> sisImportErrorsService;
 
         @SuppressWarnings("SpringJavaInjectionPointsAutowiringInspection")
         @Autowired
@@ -100,84 +372,319 @@ public class LoginsCsvApplication {
         public void run(ApplicationArguments args) throws Exception {
             log.debug("Cross-enrollment record source {}", crossEnrollmentRecordSource);
 
-            // Resolve input records from the configured source
-            List<CrossEnrollmentRecord> inputRecords = crossEnrollmentRecordSource.getRecords();
+            // Fail before doing any work if watch mode is enabled for a source which does not receive files
+            if(watchEnabled && !crossEnrollmentRecordSource.isWatchSupported()) {
+                throw new IllegalStateException(String.format(
+                    "cvc.cross-enrollment.watch.enabled is set, but SIS type %s does not receive input files "
+                        + "(watch mode is only supported for colleague)",
+                    sisType));
+            }
+
+            // Keep running and import input as it arrives
+            if(watchEnabled) {
+                watchInput();
+                return;
+            }
 
-            // Validate there is at least one record to process
-            if(inputRecords.size() < 1) {
-                log.info("No cross-enrollment records to process - exiting");
-                System.exit(0);
+            try {
+                runImport(null);
+            }
+            finally {
+                // Export metrics whether or not the import succeeded
+                metricsExportService.export();
+            }
+        }
+
+        /**
+         * Keep running, and import new input files as soon as they have finished arriving. Files which arrive
+         * close together are sent as a single import, and the Spring context and HTTP connection pool stay warm
+         * between imports. A failed import is logged, and the next batch of files is still imported.
+         * @throws Exception
+         */
+        private void watchInput() throws Exception {
+            try(DirectoryWatcher watcher = crossEnrollmentRecordSource.watchInput(watchQuietPeriod)) {
+                while(true) {
+                    List<Path> inputFiles = watcher.awaitFiles();
+                    log.info("Importing {} cross-enrollment input file(s) {}", inputFiles.size(), inputFiles);
+
+                    try {
+                        // Only read the files which have settled, and not files which started arriving since
+                        runImport(inputFiles);
+                    }
+                    catch(Exception exception) {
+                        log.error("Failed to import cross-enrollment input files - waiting for new files", exception);
+                    }
+
+                    metricsExportService.export();
+                }
             }
+        }
 
-            // Set up output path
-            Path outputPath = Paths.get(pathOutputFile);
+        /**
+         * Read new records from the record source, deliver them to Canvas, and wait for the imports to finish.
+         * @param inputFiles Input files released by the watcher, or null to read all records of the source
+         * @throws Exception
+         */
+        private void runImport(List<Path> inputFiles) throws Exception {
+            Timer.Sample writeSample = Timer.start(meterRegistry);
+
+            // Set up output path (a compressed upload is archived with the extension of its format)
+            UploadCompression compression = UploadCompression.fromConfig(compressionName);
+            Path outputPath = compression.resolve(Paths.get(pathOutputFile));
             Path outputDirectory = outputPath.getParent();
             createDirectory(outputDirectory);
 
-            // Open a local CSV file and transform input
-            try(CSVWriter writer = new CSVWriter(Files.newBufferedWriter(outputPath))) {
-                // Write header
-                writer.writeNext(CSV_HEADER);
-
-                // Iterate and write records
-                for(CrossEnrollmentRecord record : inputRecords) {
-                    writer.writeNext(new String[] {
-                        record.getTeachingCollegeId(),
-                        record.getHomeCollegeLoginId(),
-                        record.getHomeCollegeId(),
-                        record.getCanvasRootAccount()
-                    });
+            // Open the store of records already delivered to Canvas (a full resync starts from an empty store)
+            final FingerprintStore fingerprintStore = openFingerprintStore();
+
+            // Stream input records from the configured source, skipping records which have already been imported
+            // and records which were already read by this import
+            final AtomicLong suppressedCount = new AtomicLong();
+            final AtomicLong duplicateCount = new AtomicLong();
+            final List<LoginsCsvBatch> batches;
+
+            try(Stream<CrossEnrollmentRecord> inputRecords = inputFiles != null
+                    ? crossEnrollmentRecordSource.streamRecords(inputFiles)
+                    : crossEnrollmentRecordSource.streamRecords()) {
+                Counter readCounter = Counter
+                    .builder("logins.records.read")
+                    .tag("tenant", tenantName)
+                    .tag("source", sisType)
+                    .register(meterRegistry);
+
+                Stream<CrossEnrollmentRecord> newRecords = inputRecords.peek(record -> readCounter.increment()).filter(record -> {
+                    if(fingerprintStore == null) {
+                        return true;
+                    }
+
+                    switch(fingerprintStore.add(record.fingerprint())) {
+                        case PENDING:
+                            duplicateCount.incrementAndGet();
+                            return false;
+                        case COMMITTED:
+                            suppressedCount.incrementAndGet();
+                            return false;
+                        default:
+                            return true;
+                    }
+                });
+
+                LoginsCsvBatchWriter batchWriter = new LoginsCsvBatchWriter(
+                    outputPath,
+                    compression,
+                    batchMaxRecords,
+                    batchByRootAccount);
+
+                boolean streamUpload = UPLOAD_MODE_STREAM.equalsIgnoreCase(uploadMode);
+
+                if(streamUpload && !batchWriter.isBatching()) {
+                    // Generate the CSV while it is uploaded (a copy is still written to the output file)
+                    Iterator<CrossEnrollmentRecord> recordIterator = newRecords.iterator();
+                    batches = new ArrayList<>();
+
+                    if(recordIterator.hasNext()) {
+                        LoginsCsvBatch batch = new LoginsCsvBatch(outputPath);
+                        batch.setRequestBody(new LoginsCsvRequestBody(recordIterator, outputPath, compression));
+                        batches.add(batch);
+                    }
+                }
+                else {
+                    if(streamUpload) {
+                        log.warn("Stream upload mode is not supported when splitting logins.csv - batch files will be uploaded from disk");
+                    }
+
+                    // Write local CSV files, and upload them directly from disk
+                    try(LoginsCsvBatchWriter writer = batchWriter) {
+                        newRecords.forEach(writer::write);
+                    }
+
+                    batches = batchWriter.getBatches();
+                    batches.forEach(batch -> batch.setRequestBody(
+                        RequestBody.create(batch.getPath().toFile(), compression.getMediaType())));
+
+                    log.info(
+                        "Wrote {} cross-enrollment records to {} file(s) in {}",
+                        batchWriter.getRecordCount(),
+                        batches.size(),
+                        outputDirectory);
+                }
+
+                // With stream uploads, records are read during the upload phase instead
+                writeSample.stop(phaseTimer("write"));
+
+                // Validate there is at least one record to process
+                if(batches.isEmpty()) {
+                    recordSuppressedRecords(suppressedCount.get(), duplicateCount.get());
+
+                    // Nothing new to deliver, so the source is up to date
+                    crossEnrollmentRecordSource.onImportCompleted();
+                    if(fingerprintStore != null) {
+                        fingerprintStore.commit();
+                        fingerprintStoreSaved = true;
+                    }
+
+                    log.info("No cross-enrollment records to process");
+                    return;
+                }
+
+                // Deliver files to Canvas (a streamed upload still reads from the open record stream)
+                Timer.Sample uploadSample = Timer.start(meterRegistry);
+                submitImports(batches, compression);
+                uploadSample.stop(phaseTimer("upload"));
+            }
+
+            recordBatchSizes(batches);
+
+            recordSuppressedRecords(suppressedCount.get(), duplicateCount.get());
+
+            // Wait for Canvas to finish processing every import which was created
+            Timer.Sample awaitSample = Timer.start(meterRegistry);
+            awaitImports(batches, compression);
+            awaitSample.stop(phaseTimer("await"));
+            reportImports(batches);
+
+            // Let the record source know its records have been imported, so it can save its progress
+            boolean allCompleted = batches
+                .stream()
+                .allMatch(batch -> IMPORT_COMPLETED_STATES.contains(batch.getWorkflowState()));
+
+            if(allCompleted) {
+                crossEnrollmentRecordSource.onImportCompleted();
+
+                // Remember the delivered records so they are not sent again
+                if(fingerprintStore != null) {
+                    commitFingerprints(fingerprintStore, batches);
+                }
+            }
+            else {
+                log.warn("Not every SIS import completed - records will be sent again on the next run");
+
+                if(fingerprintStore != null) {
+                    fingerprintStore.rollback();
                 }
             }
 
+            // Fail the run if any import could not be created or tracked
+            long failedCount = batches.stream().filter(batch -> batch.getError() != null).count();
+            if(failedCount > 0) {
+                throw new RuntimeException(String.format(
+                    "%d of %d SIS imports failed (see logs for detail)", failedCount, batches.size()));
+            }
+        }
+
+        /**
+         * Save the fingerprints of the records delivered by completed imports, except for records which Canvas
+         * reported as failed, so that those are sent again on the next run. If an import reported errors which
+         * cannot be matched to records, no new fingerprints are saved at all.
+         * @param fingerprintStore Store holding the fingerprints of the delivered records as pending
+         * @param batches Batches which were imported
+         */
+        private void commitFingerprints(FingerprintStore fingerprintStore, List<LoginsCsvBatch> batches) {
+            if(batches.stream().anyMatch(LoginsCsvBatch::isFailedRecordsUnknown)) {
+                log.warn("Canvas reported errors which could not be matched to records - records will be sent again on the next run");
+                fingerprintStore.rollback();
+                return;
+            }
+
+            long failedCount = batches
+                .stream()
+                .flatMap(batch -> batch.getFailedFingerprints().stream())
+                .filter(fingerprintStore::discard)
+                .count();
+
+            fingerprintStore.commit();
+            fingerprintStoreSaved = true;
+
+            if(failedCount > 0) {
+                log.info("{} records which failed in Canvas will be sent again on the next run", failedCount);
+            }
+
+            log.info("Saved {} record fingerprints to {}", fingerprintStore.size(), fingerprintStore.getPath());
+        }
+
+        /**
+         * Upload each batch to Canvas as a separate SIS import. At most the configured number of uploads
+         * are in progress at the same time. Failures are recorded on the batch so the remaining imports can still be tracked.
+         * @param batches Batches to upload
+         * @param compression Format of the batch files
+         */
+        private void submitImports(List<LoginsCsvBatch> batches, UploadCompression compression) {
             // Build HTTP URL for SIS import API
-            HttpUrl sisImportUrl = new HttpUrl.Builder()
-                .scheme("https")
-                .host(canvasHost)
-                .addPathSegment("api")
-                .addPathSegment("v1")
-                .addPathSegment("accounts")
-                .addPathSegment(canvasAccountId)
+            HttpUrl sisImportUrl = canvasAccountUrl()
                 .addPathSegment("sis_imports")
                 .addQueryParameter("import_type", "instructure_csv")
-                .addQueryParameter("extension", "csv")
+                .addQueryParameter("extension", compression.getExtension())
                 .build();
 
             log.debug("Constructed import API URL {}", sisImportUrl);
 
-            // Package the CSV file into a request body
-            RequestBody sisImportBody = RequestBody.create(
-                Files.readAllBytes(outputPath),
-                MediaType.get("text/csv"));
+            Flux.fromIterable(batches)
+                .flatMap(batch -> submitImport(sisImportUrl, batch)
+                    .onErrorResume(exception -> {
+                        log.error("Failed to create SIS import for {}", batch.getPath(), exception);
+                        batch.setError(exception);
+                        return Mono.empty();
+                    }),
+                    Math.max(1, batchConcurrency))
+                .blockLast();
+        }
 
+        private Mono<Void> submitImport(HttpUrl sisImportUrl, LoginsCsvBatch batch) {
             // Build HTTP request deliver logins file to Canvas environment
             Request sisImportRequest = new Request.Builder()
                 .header("Authorization", "Bearer " + canvasApiToken)
-                .post(sisImportBody)
+                .post(batch.getRequestBody())
                 .url(sisImportUrl)
                 .build();
 
             // Deliver file to Canvas environment
-            Map<String, Object> importCreationResponse =
-                httpApiService.call(sisImportRequest);
-            log.debug("Import creation response from Canvas {}", importCreationResponse);
+            return httpApiService.getObject().callAsync(sisImportRequest, SisImport.class).doOnNext(importCreationResponse -> {
+                log.debug("Import creation response from Canvas {}", importCreationResponse);
+
+                // A streamed body only knows how many records it contained once it has been sent
+                if(batch.getRequestBody() instanceof LoginsCsvRequestBody) {
+                    batch.setRecordCount(((LoginsCsvRequestBody) batch.getRequestBody()).getRecordCount());
+                }
+
+                batch.setImportId(importCreationResponse.getId());
+                batch.setImportCreatedNanos(System.nanoTime());
+
+                log.info(
+                    "Uploaded {} with {} records, and created SIS import with ID {}",
+                    batch.getPath().getFileName(),
+                    batch.getRecordCount(),
+                    batch.getImportId());
+            }).then();
+        }
+
+        /**
+         * Poll every created SIS import at the same time until Canvas has finished processing all of them.
+         * Polls wait between requests without holding a thread.
+         * @param batches Batches which were uploaded
+         * @param compression Format of the batch files
+         */
+        private void awaitImports(List<LoginsCsvBatch> batches, UploadCompression compression) {
+            Flux.fromIterable(batches)
+                .filter(batch -> batch.getImportId() != null)
+                .flatMap(batch -> awaitImport(batch, compression)
+                    .onErrorResume(exception -> {
+                        log.error("Failed to check status of SIS import {}", batch.getImportId(), exception);
+                        batch.setError(exception);
+                        return Mono.empty();
+                    }),
+                    Math.max(1, batches.size()))
+                .blockLast();
+        }
 
-            // Fix request ID (Gson treats all numeric values as floating point)
-            int importRequestId = ((Double) importCreationResponse.get("id")).intValue();
-            log.info("Uploaded logins.csv, and created SIS import with ID {}", importRequestId);
+        private Mono<Void> awaitImport(LoginsCsvBatch batch, UploadCompression compression) {
+            long importRequestId = batch.getImportId();
 
             // Build request for polling the import status API
-            HttpUrl sisStatusUrl = new HttpUrl.Builder()
-                .scheme("https")
-                .host(canvasHost)
-                .addPathSegment("api")
-                .addPathSegment("v1")
-                .addPathSegment("accounts")
-                .addPathSegment(canvasAccountId)
+            HttpUrl sisStatusUrl = canvasAccountUrl()
                 .addPathSegment("sis_imports")
-                .addPathSegment(Integer.toString(importRequestId))
+                .addPathSegment(Long.toString(importRequestId))
                 .addQueryParameter("import_type", "instructure_csv")
-                .addQueryParameter("extension", "csv")
+                .addQueryParameter("extension", compression.getExtension())
                 .build();
 
             Request sisStatusRequest = new Request.Builder()
@@ -189,45 +696,270 @@ public class LoginsCsvApplication {
             log.debug("Constructed import status API URL {}", sisStatusUrl);
 
             // Poll the import status API until the job is completed or has an error
-            Map<String, Object> finalStatusResponse = httpApiService
-                .poll(
+            return httpApiService
+                .getObject()
+                .pollAsync(
                     sisStatusRequest,
-                    Duration.ofSeconds(15),
-                    "workflow_state != 'initializing' and workflow_state != 'created' and workflow_state != 'importing'");
+                    SisImport.class,
+                    "workflowState != 'initializing' and workflowState != 'created' and workflowState != 'importing'")
+                .flatMap(finalStatusResponse -> fetchArchivedStatus(sisStatusRequest, batch, finalStatusResponse)
+                    .doOnNext(archivedStatus -> archiveImport(batch, finalStatusResponse, archivedStatus, compression))
+                    .thenReturn(finalStatusResponse))
+                .doOnNext(finalStatusResponse -> Timer
+                    .builder("canvas.import.latency")
+                    .tag("tenant", tenantName)
+                    .tag("workflowState", String.valueOf(batch.getWorkflowState()))
+                    .register(meterRegistry)
+                    .record(System.nanoTime() - batch.getImportCreatedNanos(), TimeUnit.NANOSECONDS))
+                .flatMap(finalStatusResponse -> processErrors(batch, finalStatusResponse))
+                .then();
+        }
+
+        /**
+         * Summarize the errors attachment of a finished import, if there is one, and note which records failed.
+         * This runs in the background while other imports are still being polled. A failure to process the errors
+         * is logged, but does not fail the import (the failed records are then unknown).
+         * @param batch Batch which was imported
+         * @param finalStatusResponse Final status of the import
+         * @return Mono which completes when the errors have been processed
+         */
+        private Mono<Void> processErrors(LoginsCsvBatch batch, SisImport finalStatusResponse) {
+            if(finalStatusResponse.getErrorsAttachment() == null) {
+                return Mono.empty();
+            }
+
+            Timer.Sample errorsSample = Timer.start(meterRegistry);
+
+            return sisImportErrorsService
+                .getObject()
+                .process(
+                    batch.getImportId(),
+                    finalStatusResponse.getErrorsAttachment(),
+                    batch.getPath().getParent(),
+                    Arrays.asList(CSV_HEADER).indexOf("root_account"),
+                    row -> {
+                        if(row.length == CSV_HEADER.length) {
+                            batch.getFailedFingerprints().add(fromCsvLine(row).fingerprint());
+                        }
+                        else {
+                            batch.setFailedRecordsUnknown(true);
+                        }
+                    })
+                .doOnNext(summary -> {
+                    if(summary.getUnidentifiedRows() > 0) {
+                        batch.setFailedRecordsUnknown(true);
+                    }
+                })
+                .doFinally(signal -> errorsSample.stop(meterRegistry.timer("canvas.import.errors", "tenant", tenantName)))
+                .onErrorResume(exception -> {
+                    log.warn("Failed to process errors of SIS import {}", batch.getImportId(), exception);
+                    batch.setFailedRecordsUnknown(true);
+                    return Mono.empty();
+                })
+                .then();
+        }
+
+        /**
+         * Fetch the final status of a finished import once more as a JSON tree, so that it can be archived as
+         * Canvas sent it, including the fields {@link SisImport} does not bind. Polls are only bound to
+         * {@link SisImport}, and the status no longer changes once the import has finished. If the status cannot
+         * be fetched again, the bound final status is archived instead.
+         * @param sisStatusRequest Request used to poll the import status
+         * @param batch Batch which was imported
+         * @param finalStatusResponse Final status of the import
+         * @return Mono of the status to archive
+         */
+        private Mono<Object> fetchArchivedStatus(
+                Request sisStatusRequest,
+                LoginsCsvBatch batch,
+                SisImport finalStatusResponse) {
+            return httpApiService
+                .getObject()
+                .callAsync(sisStatusRequest, JsonObject.class)
+                .<Object>map(rawStatus -> rawStatus)
+                .onErrorResume(exception -> {
+                    log.warn("Failed to fetch final status of SIS import {} as sent by Canvas", batch.getImportId(), exception);
+                    return Mono.just(finalStatusResponse);
+                });
+        }
+
+        private void archiveImport(
+                LoginsCsvBatch batch,
+                SisImport finalStatusResponse,
+                Object archivedStatus,
+                UploadCompression compression) {
+            long importRequestId = batch.getImportId();
 
             log.debug("Final import status {}", finalStatusResponse);
+            batch.setFinalStatus(finalStatusResponse);
 
-            // Write the final output status from Canvas to a local file for inspection
-            Path importStatusOutputFile = outputPath.resolveSibling("canvas_sis_import_status_" + importRequestId + ".log");
+            try {
+                // Write the final output status from Canvas to a local file for inspection
+                Path importStatusOutputFile = batch.getPath()
+                    .resolveSibling("canvas_sis_import_status_" + importRequestId + ".log");
+
+                Files.write(
+                    importStatusOutputFile,
+                    Collections.singletonList(jsonService.getObject().toJsonPretty(archivedStatus)),
+                    Charset.defaultCharset());
+
+                // Rename the logins.csv output file with its import ID for archiving
+                Files.move(
+                    batch.getPath(),
+                    batch.getPath().resolveSibling("logins_" + importRequestId + "." + compression.getExtension()));
+            }
+            catch(IOException ioException) {
+                // Rethrow as unchecked exception
+                throw new RuntimeException(ioException);
+            }
 
-            Files.write(
-                importStatusOutputFile,
-                Collections.singletonList(jsonService.toJsonPretty(finalStatusResponse)),
-                Charset.defaultCharset());
+            log.info("SIS import {} finished with workflow state {}", importRequestId, batch.getWorkflowState());
+        }
 
-            // Rename the logins.csv output file with its import ID for archiving
-            Files.move(
-                outputPath,
-                outputPath.resolveSibling("logins_" + importRequestId + ".csv"));
+        /**
+         * Log one combined report of every SIS import created by this run.
+         * @param batches Batches which were uploaded
+         */
+        private void reportImports(List<LoginsCsvBatch> batches) {
+            StringBuilder report = new StringBuilder();
 
-            log.info("SIS import completed. Check logs for output");
+            for(LoginsCsvBatch batch : batches) {
+                report.append(String.format("%n  %s: import %s, %d records",
+                    batch.getPath().getFileName(),
+                    batch.getImportId() != null ? batch.getImportId() : "not created",
+                    batch.getRecordCount()));
 
-            // If there is an errors attachment, fetch and log the file contents for inspection
-            if(finalStatusResponse.containsKey("errors_attachment")) {
-                sisErrorsLog.error("Logging errors from Canvas SIS import {}", importRequestId);
+                if(!batch.getRootAccounts().isEmpty()) {
+                    report.append(", root accounts ").append(batch.getRootAccounts());
+                }
 
-                Map<String, Object> errorAttachment = (Map<String, Object>) finalStatusResponse.get("errors_attachment");
+                if(batch.getError() != null) {
+                    report.append(", failed: ").append(batch.getError().getMessage());
+                }
+                else {
+                    report.append(", workflow state ").append(batch.getWorkflowState());
+                }
+            }
 
-                // Fetch the error output from Canvas and pipe into dedicated log file through Log4j
-                Request sisErrorsDownloadRequest = new Request
-                    .Builder()
-                    .url((String) errorAttachment.get("url"))
-                    .build();
+            log.info(
+                "SIS import summary ({} imports, {} records). Check logs for output{}",
+                batches.size(),
+                batches.stream().mapToLong(LoginsCsvBatch::getRecordCount).sum(),
+                report);
+        }
 
-                httpApiService.fetchLines(sisErrorsDownloadRequest, sisErrorsLog::error);
+        /**
+         * @return URL builder for the configured Canvas account API
+         */
+        private HttpUrl.Builder canvasAccountUrl() {
+            return new HttpUrl.Builder()
+                .scheme(canvasScheme)
+                .host(canvasHost)
+                .port(canvasPort)
+                .addPathSegment("api")
+                .addPathSegment("v1")
+                .addPathSegment("accounts")
+                .addPathSegment(canvasAccountId);
+        }
+
+        /**
+         * Convert a record into a line of the logins.csv file.
+         * @param record The cross-enrollment record
+         * @return Values in the order of {@link #CSV_HEADER}
+         */
+        static String[] toCsvLine(CrossEnrollmentRecord record) {
+            return new String[] {
+                record.getTeachingCollegeId(),
+                record.getHomeCollegeLoginId(),
+                record.getHomeCollegeId(),
+                record.getCanvasRootAccount()
+            };
+        }
+
+        /**
+         * Convert a line of the logins.csv file back into a record.
+         * @param line Values in the order of {@link #CSV_HEADER}
+         * @return The cross-enrollment record
+         */
+        static CrossEnrollmentRecord fromCsvLine(String[] line) {
+            return new CrossEnrollmentRecord(line[3], line[2], line[1], line[0]);
+        }
+
+        private void recordSuppressedRecords(long suppressedCount, long duplicateCount) {
+            if(suppressedCount > 0) {
+                meterRegistry.counter("logins.records.skipped", "tenant", tenantName).increment(suppressedCount);
+                log.info("Skipped {} cross-enrollment records which were already imported", suppressedCount);
+            }
+
+            if(duplicateCount > 0) {
+                meterRegistry.counter("logins.records.duplicate", "tenant", tenantName).increment(duplicateCount);
+                log.info("Skipped {} cross-enrollment records which were read more than once", duplicateCount);
+            }
+        }
+
+        /**
+         * Record the size of each logins.csv file written, and of each file which Canvas received.
+         * @param batches Batches which were uploaded
+         */
+        private void recordBatchSizes(List<LoginsCsvBatch> batches) throws IOException {
+            DistributionSummary writtenSizes = DistributionSummary
+                .builder("logins.csv.size")
+                .baseUnit("bytes")
+                .tag("tenant", tenantName)
+                .register(meterRegistry);
+
+            DistributionSummary uploadedSizes = DistributionSummary
+                .builder("canvas.upload.size")
+                .baseUnit("bytes")
+                .tag("tenant", tenantName)
+                .register(meterRegistry);
+
+            for(LoginsCsvBatch batch : batches) {
+                if(Files.exists(batch.getPath())) {
+                    long size = Files.size(batch.getPath());
+                    writtenSizes.record(size);
+
+                    if(batch.getImportId() != null) {
+                        uploadedSizes.record(size);
+                    }
+                }
             }
         }
 
+        /**
+         * @param phase Name of a phase of the import
+         * @return Timer for the phase
+         */
+        private Timer phaseTimer(String phase) {
+            return Timer
+                .builder("logins.import.phase")
+                .tag("tenant", tenantName)
+                .tag("phase", phase)
+                .register(meterRegistry);
+        }
+
+        /**
+         * Open the fingerprint store used to skip records that have already been imported.
+         * @return The fingerprint store, or null if duplicate suppression is disabled
+         */
+        private FingerprintStore openFingerprintStore() {
+            if(!dedupEnabled) {
+                return null;
+            }
+
+            Path storePath = Paths.get(pathDedupStoreFile);
+
+            // In watch mode only the first import is a full resync, and later imports build on the store it saved
+            if(fullResync && !fingerprintStoreSaved) {
+                log.info("Full resync requested - all records will be sent to Canvas");
+                return FingerprintStore.empty(storePath, dedupRetentionDays);
+            }
+
+            FingerprintStore fingerprintStore = FingerprintStore.open(storePath, dedupRetentionDays);
+            log.debug("Loaded {} record fingerprints from {}", fingerprintStore.size(), storePath);
+            return fingerprintStore;
+        }
+
         /**
          * Helper method to create a directories from a path. If the directories already exist, then this
          * method does nothing.
@@ -0,0 +1,78 @@
+/*
+ * Copyright 2020 California Community Colleges Chancellor's Office
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.cvcoei.sistools.csv.logins;
+
+import lombok.Data;
+import okhttp3.RequestBody;
+import org.cvcoei.sistools.common.canvas.SisImport;
+
+import java.nio.file.Path;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * One logins.csv file delivered to Canvas as its own SIS import, and the progress of that import.
+ */
+@Data
+public class LoginsCsvBatch {
+
+    /**
+     * Local copy of the file sent to Canvas
+     */
+    private final Path path;
+
+    /**
+     * Root accounts of the records in this batch
+     */
+    private final Set<String> rootAccounts = new TreeSet<>();
+
+    private long recordCount;
+
+    private RequestBody requestBody;
+
+    private Long importId;
+
+    /**
+     * Value of System.nanoTime() when the import was created, for measuring how long Canvas took to process it
+     */
+    private long importCreatedNanos;
+
+    private SisImport finalStatus;
+
+    /**
+     * Error which prevented the import from being created or tracked
+     */
+    private Throwable error;
+
+    /**
+     * Fingerprints of the records which Canvas reported as failed in the errors attachment of the import
+     */
+    private final Set<Long> failedFingerprints = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Whether Canvas reported errors which could not be matched to records, so that any record may have failed
+     */
+    private volatile boolean failedRecordsUnknown;
+
+    /**
+     * @return Final workflow state reported by Canvas, or null if the import never completed polling
+     */
+    public String getWorkflowState() {
+        return finalStatus != null ? finalStatus.getWorkflowState() : null;
+    }
+
+}
@@ -0,0 +1,172 @@
+/*
+ * Copyright 2020 California Community Colleges Chancellor's Office
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.cvcoei.sistools.csv.logins;
+
+import com.opencsv.CSVWriter;
+import org.springframework.util.StringUtils;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes cross-enrollment records into one or more logins.csv files, so that a large delivery can be split into
+ * several smaller SIS imports. Records can be grouped by their Canvas root account, and each file can be capped at a
+ * maximum number of records.
+ *
+ * When neither limit is enabled, all records are written to a single file at the output path.
+ */
+public class LoginsCsvBatchWriter implements Closeable {
+
+    private final Path outputPath;
+
+    private final UploadCompression compression;
+
+    private final int maxRecords;
+
+    private final boolean byRootAccount;
+
+    private final List<LoginsCsvBatch> batches = new ArrayList<>();
+
+    private final Map<String, OpenBatch> openBatches = new HashMap<>();
+
+    /**
+     * @param outputPath Path of the logins.csv file (batch files are created next to it)
+     * @param compression Format of the files
+     * @param maxRecords Maximum number of records per file, or 0 for no limit
+     * @param byRootAccount Write the records of each root account to separate files
+     */
+    public LoginsCsvBatchWriter(Path outputPath, UploadCompression compression, int maxRecords, boolean byRootAccount) {
+        this.outputPath = outputPath;
+        this.compression = compression;
+        this.maxRecords = maxRecords;
+        this.byRootAccount = byRootAccount;
+    }
+
+    /**
+     * @return True if records will be split across more than one file
+     */
+    public boolean isBatching() {
+        return maxRecords > 0 || byRootAccount;
+    }
+
+    public void write(CrossEnrollmentRecord record) {
+        String batchKey = byRootAccount ? String.valueOf(record.getCanvasRootAccount()) : "";
+
+        try {
+            // Find the open file for the record, and start a new one when it is full
+            OpenBatch openBatch = openBatches.get(batchKey);
+            if(openBatch != null && maxRecords > 0 && openBatch.batch.getRecordCount() >= maxRecords) {
+                openBatch.close();
+                openBatch = null;
+            }
+
+            if(openBatch == null) {
+                openBatch = open();
+                openBatches.put(batchKey, openBatch);
+            }
+
+            openBatch.writer.writeNext(LoginsCsvApplication.Runner.toCsvLine(record));
+            openBatch.batch.setRecordCount(openBatch.batch.getRecordCount() + 1);
+
+            // A record may have no root account, which is written as an empty field but not reported
+            if(StringUtils.hasText(record.getCanvasRootAccount())) {
+                openBatch.batch.getRootAccounts().add(record.getCanvasRootAccount());
+            }
+        }
+        catch(IOException exception) {
+            // Rethrow as unchecked exception
+            throw new RuntimeException(exception);
+        }
+    }
+
+    /**
+     * @return Total number of records written across all files
+     */
+    public long getRecordCount() {
+        return batches.stream().mapToLong(LoginsCsvBatch::getRecordCount).sum();
+    }
+
+    /**
+     * @return Files written so far, in the order they were created
+     */
+    public List<LoginsCsvBatch> getBatches() {
+        return batches;
+    }
+
+    @Override
+    public void close() throws IOException {
+        for(OpenBatch openBatch : openBatches.values()) {
+            openBatch.close();
+        }
+
+        openBatches.clear();
+    }
+
+    private OpenBatch open() throws IOException {
+        // Number the files when splitting, otherwise keep the configured output file name
+        Path batchPath = outputPath;
+        if(isBatching()) {
+            String fileName = outputPath.getFileName().toString();
+            int extensionIndex = fileName.lastIndexOf('.');
+            batchPath = outputPath.resolveSibling(String.format("%s_batch%d%s",
+                extensionIndex > 0 ? fileName.substring(0, extensionIndex) : fileName,
+                batches.size() + 1,
+                extensionIndex > 0 ? fileName.substring(extensionIndex) : ""));
+        }
+
+        LoginsCsvBatch batch = new LoginsCsvBatch(batchPath);
+        batches.add(batch);
+
+        OutputStream fileOutput = new BufferedOutputStream(Files.newOutputStream(batchPath));
+        CSVWriter writer = new CSVWriter(new OutputStreamWriter(
+            compression.wrap(fileOutput, LoginsCsvApplication.Runner.CSV_ENTRY_NAME),
+            StandardCharsets.UTF_8));
+
+        // Write header
+        writer.writeNext(LoginsCsvApplication.Runner.CSV_HEADER);
+
+        return new OpenBatch(batch, writer);
+    }
+
+    private static class OpenBatch implements Closeable {
+
+        private final LoginsCsvBatch batch;
+
+        private final CSVWriter writer;
+
+        OpenBatch(LoginsCsvBatch batch, CSVWriter writer) {
+            this.batch = batch;
+            this.writer = writer;
+        }
+
+        @Override
+        public void close() throws IOException {
+            writer.close();
+        }
+
+    }
+
+}
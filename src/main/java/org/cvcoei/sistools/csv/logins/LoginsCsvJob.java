@@ -0,0 +1,36 @@
+/*
+ * Copyright 2020 California Community Colleges Chancellor's Office
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.cvcoei.sistools.csv.logins;
+
+import org.cvcoei.sistools.common.config.SisDataSourceConfiguration;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Import;
+
+/**
+ * Beans for a single logins.csv import, created in a child context of {@link LoginsCsvApplication} with the
+ * configuration of one tenant.
+ */
+@Configuration(proxyBeanMethods = false)
+@Import({
+    SisDataSourceConfiguration.class,
+    BannerCrossEnrollmentRecordSource.class,
+    ColleagueCrossEnrollmentRecordSource.class,
+    PeoplesoftCrossEnrollmentRecordSource.class,
+    LoginsCsvApplication.Runner.class
+})
+public class LoginsCsvJob {
+}
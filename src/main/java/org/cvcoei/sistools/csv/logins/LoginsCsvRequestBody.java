@@ -0,0 +1,150 @@
+/*
+ * Copyright 2020 California Community Colleges Chancellor's Office
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.cvcoei.sistools.csv.logins;
+
+import com.opencsv.CSVWriter;
+import okhttp3.MediaType;
+import okhttp3.RequestBody;
+import okio.BufferedSink;
+
+import java.io.BufferedOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Iterator;
+
+/**
+ * Request body which generates logins.csv while it is being uploaded, so the records never have to be held in
+ * memory or re-read from disk. A copy of everything sent is written to a local file for auditing.
+ *
+ * The body can only be written once, because the underlying records are consumed as they are sent.
+ */
+public class LoginsCsvRequestBody extends RequestBody {
+
+    private final Iterator<CrossEnrollmentRecord> records;
+
+    private final Path archivePath;
+
+    private final UploadCompression compression;
+
+    private long recordCount;
+
+    public LoginsCsvRequestBody(Iterator<CrossEnrollmentRecord> records, Path archivePath) {
+        this(records, archivePath, UploadCompression.NONE);
+    }
+
+    public LoginsCsvRequestBody(
+            Iterator<CrossEnrollmentRecord> records,
+            Path archivePath,
+            UploadCompression compression) {
+        this.records = records;
+        this.archivePath = archivePath;
+        this.compression = compression;
+    }
+
+    @Override
+    public MediaType contentType() {
+        return compression.getMediaType();
+    }
+
+    @Override
+    public long contentLength() {
+        // Length is unknown until every record has been written (chunked transfer)
+        return -1;
+    }
+
+    @Override
+    public boolean isOneShot() {
+        return true;
+    }
+
+    @Override
+    public void writeTo(BufferedSink sink) throws IOException {
+        // Encode the CSV once, and send the same bytes to Canvas and to the archive file
+        OutputStream output = new ArchivingOutputStream(
+            sink.outputStream(),
+            new BufferedOutputStream(Files.newOutputStream(archivePath)));
+
+        try(CSVWriter writer = new CSVWriter(new OutputStreamWriter(
+                compression.wrap(output, LoginsCsvApplication.Runner.CSV_ENTRY_NAME),
+                StandardCharsets.UTF_8))) {
+            // Write header
+            writer.writeNext(LoginsCsvApplication.Runner.CSV_HEADER);
+
+            // Write records as they are produced by the source
+            while(records.hasNext()) {
+                writer.writeNext(LoginsCsvApplication.Runner.toCsvLine(records.next()));
+                recordCount++;
+            }
+        }
+    }
+
+    /**
+     * @return Number of records written to the request
+     */
+    public long getRecordCount() {
+        return recordCount;
+    }
+
+    /**
+     * Copies everything written to the request sink into the archive file. Closing only flushes the sink, since
+     * it is owned by OkHttp.
+     */
+    private static class ArchivingOutputStream extends FilterOutputStream {
+
+        private final OutputStream archive;
+
+        ArchivingOutputStream(OutputStream sink, OutputStream archive) {
+            super(sink);
+            this.archive = archive;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            archive.write(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            archive.write(b, off, len);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            out.flush();
+            archive.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                out.flush();
+            }
+            finally {
+                archive.close();
+            }
+        }
+
+    }
+
+}
@@ -16,24 +16,151 @@
 
 package org.cvcoei.sistools.csv.logins;
 
+import com.zaxxer.hikari.HikariDataSource;
+import lombok.extern.log4j.Log4j2;
+import org.cvcoei.sistools.common.jdbc.JdbcStreams;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.stereotype.Service;
+import org.springframework.util.StringUtils;
+import reactor.core.publisher.Flux;
+import reactor.core.scheduler.Schedulers;
 
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 /**
  * Implementation of a record source for the PeopleSoft SIS which queries the Oracle database directly to
  * read cross-enrollment records from a staging table provided by an external integration partner.
+ *
+ * Large staging tables can optionally be read in partitions, either by a hash of the student ID or by a list
+ * of values (such as campus codes or terms). Each partition is queried over its own pooled connection at the
+ * same time as the others, and records are passed on in the order they arrive from any partition.
  */
+@Log4j2
 @Service
 @ConditionalOnProperty(
     value="cvc.sis.type",
     havingValue = "peoplesoft")
 public class PeoplesoftCrossEnrollmentRecordSource extends CrossEnrollmentRecordSource {
 
+    @Autowired
+    private DataSource sisDataSource;
+
+    @Value("${cvc.sis.fetchSize}")
+    private int fetchSize;
+
+    @Value("${cvc.cross-enrollment.sql.peoplesoft}")
+    private String sqlQueryStagingTable;
+
+    @Value("${cvc.cross-enrollment.sql.peoplesoft-partition-hash}")
+    private String sqlQueryPartitionByHash;
+
+    @Value("${cvc.cross-enrollment.sql.peoplesoft-partition-value}")
+    private String sqlQueryPartitionByValue;
+
+    @Value("${cvc.cross-enrollment.partitions.count}")
+    private int partitionCount;
+
+    @Value("${cvc.cross-enrollment.partitions.values}")
+    private String partitionValues;
+
+    private final CrossEnrollmentRecordRowMapper recordRowMapper = new CrossEnrollmentRecordRowMapper();
+
     @Override
-    public List<CrossEnrollmentRecord> getRecords() {
-        throw new RuntimeException("Not yet implemented");
+    public Stream<CrossEnrollmentRecord> streamRecords() {
+        try {
+            // Partition by the configured values (such as campus codes or terms)
+            String[] values = StringUtils.tokenizeToStringArray(partitionValues, ",");
+            if(values.length > 0) {
+                List<Object[]> partitionArguments = Arrays
+                    .stream(values)
+                    .map(value -> new Object[] { value })
+                    .collect(Collectors.toList());
+
+                return streamPartitions(sqlQueryPartitionByValue, partitionArguments);
+            }
+
+            // Partition by a hash of the student ID
+            if(partitionCount > 1) {
+                List<Object[]> partitionArguments = new ArrayList<>();
+                for(int partition = 0; partition < partitionCount; partition++) {
+                    partitionArguments.add(new Object[] { partitionCount, partition });
+                }
+
+                return streamPartitions(sqlQueryPartitionByHash, partitionArguments);
+            }
+
+            // Read the staging table with a single query
+            log.debug("Querying staging table with fetch size {}", fetchSize);
+
+            return JdbcStreams.stream(
+                sisDataSource,
+                sqlQueryStagingTable,
+                fetchSize,
+                recordRowMapper);
+        }
+        catch(Exception anyException) {
+            // Rethrow as unchecked exception
+            throw new RuntimeException(anyException);
+        }
+    }
+
+    /**
+     * Query every partition of the staging table at the same time, each on its own worker thread and pooled
+     * connection, and merge the records into a single stream. Rows are only fetched from a partition as the
+     * merged stream is consumed, so memory use stays bounded by the fetch size of each partition. Closing the
+     * merged stream closes the query of every partition. Workers come from the shared bounded elastic scheduler,
+     * so that cancelling the merged stream never interrupts a partition while it is closing its connection.
+     * @param sql Query selecting one partition, with its arguments bound to the query parameters
+     * @param partitionArguments Query arguments of each partition
+     * @return Stream of records from all partitions
+     */
+    private Stream<CrossEnrollmentRecord> streamPartitions(String sql, List<Object[]> partitionArguments) {
+        int partitions = partitionArguments.size();
+        log.debug("Querying staging table in {} partitions with fetch size {}", partitions, fetchSize);
+
+        // Each partition holds a connection until it has been read completely, so never read more partitions at
+        // the same time than the pool can serve (the remaining partitions start as others finish). The pool is
+        // shared with other tenants which use the same database, so connections they hold are not counted, and a
+        // partition does not sit waiting for a connection until the pool times out
+        int concurrency = partitions;
+        if(sisDataSource instanceof HikariDataSource) {
+            HikariDataSource pool = (HikariDataSource) sisDataSource;
+            int freeConnections = pool.getMaximumPoolSize();
+            if(pool.getHikariPoolMXBean() != null) {
+                freeConnections -= pool.getHikariPoolMXBean().getActiveConnections();
+            }
+
+            concurrency = Math.min(partitions, Math.max(1, freeConnections));
+            if(concurrency < partitions) {
+                log.warn("Reading {} of {} partitions at a time ({} of {} pooled connections in use), increase " +
+                    "cvc.sis.pool.maximumSize to read all partitions at the same time",
+                    concurrency,
+                    partitions,
+                    pool.getMaximumPoolSize() - freeConnections,
+                    pool.getMaximumPoolSize());
+            }
+        }
+
+        List<Flux<CrossEnrollmentRecord>> partitionRecords = partitionArguments
+            .stream()
+            .map(arguments -> Flux
+                .using(
+                    () -> JdbcStreams.stream(sisDataSource, sql, fetchSize, recordRowMapper, arguments),
+                    Flux::fromStream,
+                    Stream::close)
+                .subscribeOn(Schedulers.boundedElastic()))
+            .collect(Collectors.toList());
+
+        return Flux
+            .merge(Flux.fromIterable(partitionRecords), concurrency, Math.max(fetchSize, 1))
+            .toStream(Math.max(fetchSize, 1));
     }
 
 }
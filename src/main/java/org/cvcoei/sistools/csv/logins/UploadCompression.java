@@ -0,0 +1,102 @@
+/*
+ * Copyright 2020 California Community Colleges Chancellor's Office
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.cvcoei.sistools.csv.logins;
+
+import okhttp3.MediaType;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Path;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Formats in which logins.csv can be delivered to the Canvas SIS import API. Canvas accepts either a bare CSV
+ * file or a zip archive of CSV files (gzip is not supported by the API).
+ */
+public enum UploadCompression {
+
+    NONE("csv", MediaType.get("text/csv")) {
+        @Override
+        public OutputStream wrap(OutputStream output, String entryName) {
+            return output;
+        }
+    },
+
+    ZIP("zip", MediaType.get("application/zip")) {
+        @Override
+        public OutputStream wrap(OutputStream output, String entryName) throws IOException {
+            ZipOutputStream zipOutput = new ZipOutputStream(output);
+            zipOutput.putNextEntry(new ZipEntry(entryName));
+            return zipOutput;
+        }
+    };
+
+    private final String extension;
+
+    private final MediaType mediaType;
+
+    UploadCompression(String extension, MediaType mediaType) {
+        this.extension = extension;
+        this.mediaType = mediaType;
+    }
+
+    /**
+     * @return Value of the extension parameter expected by the SIS import API
+     */
+    public String getExtension() {
+        return extension;
+    }
+
+    public MediaType getMediaType() {
+        return mediaType;
+    }
+
+    /**
+     * Wrap an output stream so that everything written to it is compressed. Closing the returned stream finishes
+     * the archive and closes the original stream.
+     * @param output Stream receiving the compressed bytes
+     * @param entryName Name of the file inside the archive
+     * @return Stream to write the uncompressed CSV into
+     */
+    public abstract OutputStream wrap(OutputStream output, String entryName) throws IOException;
+
+    /**
+     * Resolve the local file name for the given CSV file name in this format.
+     * @param csvPath Path of the uncompressed CSV file (for example logins.csv)
+     * @return Path with the file extension replaced (for example logins.zip)
+     */
+    public Path resolve(Path csvPath) {
+        String fileName = csvPath.getFileName().toString();
+        int extensionIndex = fileName.lastIndexOf('.');
+        String baseName = extensionIndex > 0 ? fileName.substring(0, extensionIndex) : fileName;
+
+        return csvPath.resolveSibling(baseName + "." + extension);
+    }
+
+    /**
+     * Parse a configuration value, treating a blank value as no compression.
+     */
+    public static UploadCompression fromConfig(String value) {
+        if(value == null || value.trim().isEmpty()) {
+            return NONE;
+        }
+
+        return valueOf(value.trim().toUpperCase());
+    }
+
+}
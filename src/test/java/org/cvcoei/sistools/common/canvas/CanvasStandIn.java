@@ -0,0 +1,181 @@
+package org.cvcoei.sistools.common.canvas;
+
+import okhttp3.HttpUrl;
+import okhttp3.OkHttpClient;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import reactor.test.scheduler.VirtualTimeScheduler;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Local stand-in for the Canvas SIS import API. Every upload creates an import, which then moves through the
+ * given workflow states, one state per status request, with progress rising evenly to 100. An import which
+ * finishes as imported_with_messages links to an errors attachment, if one is given.
+ */
+public class CanvasStandIn implements Closeable {
+
+    private final MockWebServer server = new MockWebServer();
+
+    private final List<String> workflowStates;
+
+    private final String errorsAttachment;
+
+    private final AtomicLong importIds = new AtomicLong(100);
+
+    private final Map<Long, AtomicInteger> statusRequests = new ConcurrentHashMap<>();
+
+    private final List<String> uploads = new CopyOnWriteArrayList<>();
+
+    private final List<byte[]> uploadBodies = new CopyOnWriteArrayList<>();
+
+    private final List<RecordedRequest> uploadRequests = new CopyOnWriteArrayList<>();
+
+    private final AtomicInteger errorDownloads = new AtomicInteger();
+
+    public CanvasStandIn(String errorsAttachment, String... workflowStates) throws IOException {
+        this.errorsAttachment = errorsAttachment;
+        this.workflowStates = Arrays.asList(workflowStates);
+
+        server.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) {
+                List<String> pathSegments = request.getRequestUrl().pathSegments();
+
+                // Create an import for each upload
+                if("POST".equals(request.getMethod()) && pathSegments.get(pathSegments.size() - 1).equals("sis_imports")) {
+                    byte[] body = request.getBody().readByteArray();
+                    uploads.add(new String(body, StandardCharsets.UTF_8));
+                    uploadBodies.add(body);
+                    uploadRequests.add(request);
+                    long importId = importIds.incrementAndGet();
+                    statusRequests.put(importId, new AtomicInteger());
+                    return new MockResponse().setBody("{\"id\": " + importId + ", \"workflow_state\": \"created\"}");
+                }
+
+                if(pathSegments.get(0).equals("files")) {
+                    errorDownloads.incrementAndGet();
+                    return new MockResponse().setBody(errorsAttachment);
+                }
+
+                // Report the next state of the import
+                long importId = Long.parseLong(pathSegments.get(pathSegments.size() - 1));
+                AtomicInteger requestCount = statusRequests.get(importId);
+                if(requestCount == null) {
+                    return new MockResponse().setResponseCode(404).setBody("{\"errors\": [\"not found\"]}");
+                }
+
+                return new MockResponse().setBody(statusResponse(importId, requestCount.getAndIncrement()));
+            }
+        });
+
+        server.start();
+    }
+
+    private String statusResponse(long importId, int requestIndex) {
+        // Stay in the last state once it has been reached
+        int stateIndex = Math.min(requestIndex, workflowStates.size() - 1);
+        String workflowState = workflowStates.get(stateIndex);
+        int progress = workflowStates.size() > 1 ? stateIndex * 100 / (workflowStates.size() - 1) : 100;
+
+        String response = "{\"id\": " + importId + ", \"workflow_state\": \"" + workflowState + "\", \"progress\": " + progress
+            + ", \"batch_mode\": false";
+        if(workflowState.equals("imported_with_messages") && errorsAttachment != null) {
+            response += ", \"errors_attachment\": {\"url\": \"" + server.url("/files/errors_" + importId + ".csv") + "\"}";
+        }
+
+        return response + "}";
+    }
+
+    public HttpUrl url(String path) {
+        return server.url(path);
+    }
+
+    public String getHostName() {
+        return server.getHostName();
+    }
+
+    public int getPort() {
+        return server.getPort();
+    }
+
+    public List<String> getUploads() {
+        return uploads;
+    }
+
+    public List<byte[]> getUploadBodies() {
+        return uploadBodies;
+    }
+
+    public List<RecordedRequest> getUploadRequests() {
+        return uploadRequests;
+    }
+
+    public int getStatusRequests(long importId) {
+        return statusRequests.get(importId).get();
+    }
+
+    public int getErrorDownloads() {
+        return errorDownloads.get();
+    }
+
+    @Override
+    public void close() throws IOException {
+        server.shutdown();
+    }
+
+    /**
+     * Run a blocking task on another thread, and advance virtual time whenever no HTTP call is in flight, so
+     * that delays and timeouts scheduled on the virtual time scheduler pass instantly while network round trips
+     * take no virtual time.
+     * @param scheduler Virtual time scheduler used by the code under test
+     * @param httpClient HTTP client used by the code under test
+     * @param task Task to run
+     * @return Result of the task
+     */
+    public static <T> T runOnVirtualTime(
+            VirtualTimeScheduler scheduler,
+            OkHttpClient httpClient,
+            Callable<T> task) throws Exception {
+        CompletableFuture<T> result = CompletableFuture.supplyAsync(() -> {
+            try {
+                return task.call();
+            }
+            catch(Exception exception) {
+                throw new CompletionException(exception);
+            }
+        });
+
+        while(!result.isDone()) {
+            if(httpClient.dispatcher().runningCallsCount() == 0) {
+                scheduler.advanceTimeBy(Duration.ofSeconds(10));
+            }
+
+            Thread.sleep(1);
+        }
+
+        try {
+            return result.get();
+        }
+        catch(ExecutionException executionException) {
+            throw (Exception) executionException.getCause();
+        }
+    }
+
+}
@@ -0,0 +1,88 @@
+package org.cvcoei.sistools.common.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.LazyInitializationBeanFactoryPostProcessor;
+import org.springframework.boot.convert.ApplicationConversionService;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.core.env.MapPropertySource;
+
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/**
+ * Tests that {@link SisDataSourceRegistry} warms up the configured pools when the application starts, although the
+ * application creates its beans lazily.
+ */
+public class SisDataSourceRegistryTests {
+
+    @Test
+    void testPoolWarmedUpAtStartup() throws Exception {
+        Map<String, Object> properties = properties();
+        properties.put("cvc.sis.pool.warmUp", true);
+
+        try(AnnotationConfigApplicationContext context = createContext(properties)) {
+            // Every idle connection was checked out once, before anything asked for the datasource
+            MeterRegistry meterRegistry = context.getBean(MeterRegistry.class);
+            assertEquals(2, meterRegistry.get("hikaricp.connections.acquire").tag("pool", "sis").timer().count());
+
+            // MBeans are only registered when asked for
+            assertFalse(ManagementFactory
+                .getPlatformMBeanServer()
+                .isRegistered(new ObjectName("com.zaxxer.hikari:type=Pool (sis)")));
+        }
+    }
+
+    @Test
+    void testTenantPoolsWarmedUpAtStartup() {
+        Map<String, Object> properties = properties();
+        properties.put("cvc.tenants.college-a.sis.pool.warmUp", true);
+        properties.put("cvc.tenants.college-b.sis.url", "jdbc:h2:mem:" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1");
+        properties.put("cvc.tenants.college-b.sis.pool.warmUp", true);
+        properties.put("cvc.tenants.college-c.canvas.accountId", 3);
+
+        try(AnnotationConfigApplicationContext context = createContext(properties)) {
+            // One pool for each database of a tenant which warms up
+            MeterRegistry meterRegistry = context.getBean(MeterRegistry.class);
+            assertEquals(2, meterRegistry.get("hikaricp.connections.acquire").tag("pool", "sis").timer().count());
+            assertEquals(2, meterRegistry.get("hikaricp.connections.acquire").tag("pool", "sis-2").timer().count());
+        }
+    }
+
+    @Test
+    void testPoolNotCreatedWithoutWarmUp() {
+        try(AnnotationConfigApplicationContext context = createContext(properties())) {
+            assertNull(context.getBean(MeterRegistry.class).find("hikaricp.connections.acquire").timer());
+        }
+    }
+
+    private static Map<String, Object> properties() {
+        Map<String, Object> properties = new HashMap<>();
+        properties.put("cvc.sis.url", "jdbc:h2:mem:" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1");
+        properties.put("cvc.sis.user", "sa");
+        properties.put("cvc.sis.pool.minimumIdle", 2);
+        return properties;
+    }
+
+    private static AnnotationConfigApplicationContext createContext(Map<String, Object> properties) {
+        AnnotationConfigApplicationContext context = new AnnotationConfigApplicationContext();
+        context.getEnvironment().getPropertySources().addFirst(new MapPropertySource("test", properties));
+        context.getBeanFactory().setConversionService(ApplicationConversionService.getSharedInstance());
+
+        // Create beans lazily, as the application does
+        context.addBeanFactoryPostProcessor(new LazyInitializationBeanFactoryPostProcessor());
+        context.register(SisDataSourceRegistry.class);
+        context.registerBean(MeterRegistry.class, SimpleMeterRegistry::new);
+        context.refresh();
+        return context;
+    }
+
+}
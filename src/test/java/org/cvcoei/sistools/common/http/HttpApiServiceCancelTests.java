@@ -0,0 +1,79 @@
+package org.cvcoei.sistools.common.http;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import org.cvcoei.sistools.common.config.HttpClientConfiguration;
+import org.cvcoei.sistools.common.expression.ExpressionEvalService;
+import org.cvcoei.sistools.common.json.JsonService;
+import org.junit.jupiter.api.Test;
+import org.reactivestreams.Subscription;
+import org.springframework.boot.convert.ApplicationConversionService;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import reactor.core.publisher.BaseSubscriber;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Tests that {@link HttpApiService} releases the connection of a response which the subscriber cancelled
+ * before taking.
+ */
+public class HttpApiServiceCancelTests {
+
+    @Test
+    void testCancelAfterResponseReleasesConnection() throws Exception {
+        try(MockWebServer server = new MockWebServer();
+            AnnotationConfigApplicationContext context = createContext()) {
+            server.enqueue(new MockResponse().setBody("{\"id\": 101}"));
+            server.start();
+
+            HttpApiService httpApiService = context.getBean(HttpApiService.class);
+            OkHttpClient httpClient = context.getBean(OkHttpClient.class);
+
+            // Subscribe without requesting, so that the response is received but never emitted
+            BaseSubscriber<Map<String, Object>> subscriber = new BaseSubscriber<Map<String, Object>>() {
+                @Override
+                protected void hookOnSubscribe(Subscription subscription) {
+                }
+            };
+            httpApiService.callAsync(new Request.Builder().url(server.url("/api/v1/accounts/1")).get().build())
+                .subscribe(subscriber);
+
+            // Wait until OkHttp has handed over the response
+            server.takeRequest(5, TimeUnit.SECONDS);
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while(httpClient.dispatcher().runningCallsCount() > 0 && System.nanoTime() < deadline) {
+                Thread.sleep(1);
+            }
+
+            subscriber.dispose();
+
+            // The connection went back to the pool rather than staying held by the abandoned response
+            assertEquals(1, httpClient.connectionPool().connectionCount());
+            assertEquals(1, httpClient.connectionPool().idleConnectionCount());
+        }
+    }
+
+    private AnnotationConfigApplicationContext createContext() {
+        AnnotationConfigApplicationContext context = new AnnotationConfigApplicationContext();
+        context.getBeanFactory().setConversionService(ApplicationConversionService.getSharedInstance());
+        context.register(
+            HttpClientConfiguration.class,
+            JsonService.class,
+            ExpressionEvalService.class,
+            HttpApiService.class);
+        context.registerBean(MeterRegistry.class, SimpleMeterRegistry::new);
+        context.registerBean(Scheduler.class, Schedulers::immediate);
+        context.refresh();
+        return context;
+    }
+
+}
@@ -0,0 +1,126 @@
+package org.cvcoei.sistools.common.http;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import org.cvcoei.sistools.common.canvas.CanvasStandIn;
+import org.cvcoei.sistools.common.canvas.SisImport;
+import org.cvcoei.sistools.common.config.HttpClientConfiguration;
+import org.cvcoei.sistools.common.config.PollingProperties;
+import org.cvcoei.sistools.common.expression.ExpressionEvalService;
+import org.cvcoei.sistools.common.json.JsonService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.convert.ApplicationConversionService;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import reactor.core.scheduler.Scheduler;
+import reactor.test.scheduler.VirtualTimeScheduler;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests polling a Canvas SIS import with {@link HttpApiService} on virtual time, so that backoff delays and
+ * timeouts of several minutes pass instantly.
+ */
+public class HttpApiServicePollingTests {
+
+    private final VirtualTimeScheduler scheduler = VirtualTimeScheduler.create();
+
+    private AnnotationConfigApplicationContext context;
+
+    @BeforeEach
+    void createContext() {
+        context = new AnnotationConfigApplicationContext();
+        context.getBeanFactory().setConversionService(ApplicationConversionService.getSharedInstance());
+        context.register(
+            HttpClientConfiguration.class,
+            JsonService.class,
+            ExpressionEvalService.class,
+            HttpApiService.class);
+        context.registerBean(MeterRegistry.class, SimpleMeterRegistry::new);
+        context.registerBean(Scheduler.class, () -> scheduler);
+        context.refresh();
+    }
+
+    @AfterEach
+    void closeContext() {
+        context.close();
+        scheduler.dispose();
+    }
+
+    @Test
+    void testPollUntilImportFinishes() throws Exception {
+        try(CanvasStandIn canvas = new CanvasStandIn(null, "created", "importing", "importing", "importing", "imported")) {
+            HttpApiService httpApiService = context.getBean(HttpApiService.class);
+            SisImport sisImport = createImport(httpApiService, canvas);
+
+            long startNanos = System.nanoTime();
+            SisImport finalStatus = CanvasStandIn.runOnVirtualTime(
+                scheduler,
+                context.getBean(OkHttpClient.class),
+                () -> httpApiService
+                    .pollAsync(statusRequest(canvas, sisImport), SisImport.class, policy(), "workflowState == 'imported'")
+                    .block());
+
+            assertEquals("imported", finalStatus.getWorkflowState());
+            assertEquals(5, canvas.getStatusRequests(sisImport.getId()));
+
+            // Backoff delays took virtual time rather than real time
+            assertTrue(scheduler.now(TimeUnit.SECONDS) >= 6);
+            assertTrue(System.nanoTime() - startNanos < TimeUnit.SECONDS.toNanos(5));
+        }
+    }
+
+    @Test
+    void testPollTimesOut() throws Exception {
+        try(CanvasStandIn canvas = new CanvasStandIn(null, "created", "importing")) {
+            HttpApiService httpApiService = context.getBean(HttpApiService.class);
+            SisImport sisImport = createImport(httpApiService, canvas);
+
+            Exception exception = assertThrows(Exception.class, () -> CanvasStandIn.runOnVirtualTime(
+                scheduler,
+                context.getBean(OkHttpClient.class),
+                () -> httpApiService
+                    .pollAsync(statusRequest(canvas, sisImport), SisImport.class, policy(), "workflowState == 'imported'")
+                    .block()));
+
+            // The 30 minute timeout elapsed on the virtual clock
+            assertTrue(exception.getCause() instanceof TimeoutException);
+            assertTrue(scheduler.now(TimeUnit.MINUTES) >= 30);
+        }
+    }
+
+    private SisImport createImport(HttpApiService httpApiService, CanvasStandIn canvas) {
+        return httpApiService.call(
+            new Request.Builder()
+                .url(canvas.url("/api/v1/accounts/1/sis_imports"))
+                .post(RequestBody.create("user_id,login_id", null))
+                .build(),
+            SisImport.class);
+    }
+
+    private Request statusRequest(CanvasStandIn canvas, SisImport sisImport) {
+        return new Request.Builder()
+            .url(canvas.url("/api/v1/accounts/1/sis_imports/" + sisImport.getId()))
+            .get()
+            .build();
+    }
+
+    private PollingProperties policy() {
+        // No jitter, so that every run polls the same way
+        PollingProperties policy = new PollingProperties();
+        policy.setJitter(0);
+        policy.setTimeout(Duration.ofMinutes(30));
+        return policy;
+    }
+
+}
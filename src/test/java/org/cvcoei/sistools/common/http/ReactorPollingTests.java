@@ -4,6 +4,7 @@ import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.TestInstance;
 import reactor.core.publisher.Mono;
 import reactor.retry.Repeat;
+import reactor.test.StepVerifier;
 
 import java.time.Duration;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -11,7 +12,8 @@ import java.util.concurrent.atomic.AtomicInteger;
 import static org.junit.jupiter.api.TestInstance.Lifecycle.PER_CLASS;
 
 /**
- * Unit tests to design a Reactor flow that can poll for a value until a condition is met.
+ * Unit tests to design a Reactor flow that can poll for a value until a condition is met. Time is virtual, so
+ * the tests do not wait for the backoff between checks.
  */
 @SuppressWarnings("ALL")
 @TestInstance(PER_CLASS)
@@ -22,21 +24,27 @@ public class ReactorPollingTests {
     void testPollingWithReactor() {
         final AtomicInteger iterations = new AtomicInteger();
 
-        // Create a repeater rule to continually check the value
-        Repeat repeatRule = Repeat
-            .times(10)
-            .fixedBackoff(Duration.ofSeconds(2));
-
-        Mono.defer(() -> {
-            iterations.getAndIncrement();
-            return Mono.just("hello -> " + iterations.intValue());
-        })
-        .repeatWhen(repeatRule)
-        .takeUntil(result -> {
-            System.out.println(result);
-            return result.equals("hello -> 5");
-        })
-        .blockLast();
+        // Run on virtual time, so the backoff between checks passes instantly
+        StepVerifier
+            .withVirtualTime(() -> {
+                // Create a repeater rule to continually check the value
+                Repeat repeatRule = Repeat
+                    .times(10)
+                    .fixedBackoff(Duration.ofSeconds(2));
+
+                return Mono.defer(() -> {
+                    iterations.getAndIncrement();
+                    return Mono.just("hello -> " + iterations.intValue());
+                })
+                .repeatWhen(repeatRule)
+                .takeUntil(result -> result.equals("hello -> 5"));
+            })
+            .expectNext("hello -> 1")
+            .expectNoEvent(Duration.ofSeconds(2))
+            .expectNext("hello -> 2")
+            .thenAwait(Duration.ofSeconds(6))
+            .expectNext("hello -> 3", "hello -> 4", "hello -> 5")
+            .verifyComplete();
     }
 
 }
@@ -0,0 +1,121 @@
+package org.cvcoei.sistools.common.io;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests that {@link DirectoryWatcher} waits for dropped files to stop changing, and releases files which arrive
+ * close together as one batch.
+ */
+public class DirectoryWatcherTests {
+
+    private static final Duration QUIET_PERIOD = Duration.ofMillis(1000);
+
+    private final PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:**/canvas*.csv");
+
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+
+    @AfterEach
+    void shutdownExecutor() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void testFilesAlreadyWaitingAreReleasedFirst(@TempDir Path directory) throws Exception {
+        Path waitingFile = write(directory.resolve("canvas_waiting.csv"), "1001");
+
+        try(DirectoryWatcher watcher = new DirectoryWatcher(directory, matcher, QUIET_PERIOD)) {
+            assertEquals(Arrays.asList(waitingFile), watcher.awaitFiles());
+        }
+    }
+
+    @Test
+    void testFileModifiedAheadOfClockIsNotReleasedEarly(@TempDir Path directory) throws Exception {
+        // The file system clock can run slightly ahead of the system clock
+        Path waitingFile = write(directory.resolve("canvas_waiting.csv"), "1001");
+        Files.setLastModifiedTime(
+            waitingFile,
+            FileTime.fromMillis(System.currentTimeMillis() + QUIET_PERIOD.toMillis() / 2));
+
+        try(DirectoryWatcher watcher = new DirectoryWatcher(directory, matcher, QUIET_PERIOD)) {
+            long startNanos = System.nanoTime();
+            assertEquals(Arrays.asList(waitingFile), watcher.awaitFiles());
+            assertTrue(System.nanoTime() - startNanos >= QUIET_PERIOD.toNanos());
+        }
+    }
+
+    @Test
+    void testSlowWriteIsDebouncedAndBatched(@TempDir Path directory) throws Exception {
+        try(DirectoryWatcher watcher = new DirectoryWatcher(directory, matcher, QUIET_PERIOD)) {
+            Future<List<Path>> batch = executor.submit(watcher::awaitFiles);
+
+            // Append to one file more often than the quiet period, while a second file and an ignored file arrive
+            Path slowFile = directory.resolve("canvas_a.csv");
+            for(int line = 0; line < 5; line++) {
+                write(slowFile, "100" + line);
+                if(line == 2) {
+                    write(directory.resolve("canvas_b.csv"), "2001");
+                }
+
+                write(directory.resolve("ignored.txt"), "x");
+                Thread.sleep(QUIET_PERIOD.toMillis() / 3);
+
+                assertFalse(batch.isDone(), "Batch was released while a file was still being written");
+            }
+
+            // Both files are released together once the writes have stopped
+            List<Path> files = batch.get(10, TimeUnit.SECONDS);
+            assertEquals(Arrays.asList(slowFile, directory.resolve("canvas_b.csv")), files);
+            assertEquals(5, Files.readAllLines(slowFile).size());
+        }
+    }
+
+    @Test
+    void testCloseWhileWaiting(@TempDir Path directory) throws Exception {
+        try(DirectoryWatcher watcher = new DirectoryWatcher(directory, matcher, QUIET_PERIOD)) {
+            // Nothing is waiting, so the first batch waits for a new file
+            Future<List<Path>> batch = executor.submit(watcher::awaitFiles);
+            Thread.sleep(200);
+            assertFalse(batch.isDone());
+
+            watcher.close();
+
+            ExecutionException exception = assertThrows(
+                ExecutionException.class,
+                () -> batch.get(10, TimeUnit.SECONDS));
+            assertTrue(exception.getCause() instanceof ClosedWatchServiceException);
+        }
+    }
+
+    private static Path write(Path file, String line) throws Exception {
+        return Files.write(
+            file,
+            (line + "\n").getBytes(StandardCharsets.UTF_8),
+            StandardOpenOption.CREATE,
+            StandardOpenOption.APPEND);
+    }
+
+}
@@ -0,0 +1,45 @@
+package org.cvcoei.sistools.common.io;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.BufferedReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Tests character set detection of input files.
+ */
+public class FileUtilitiesTests {
+
+    private static final String CSV = "canvasRootAccount,homeSISUserId,canvasLoginId,studentid\r\n"
+        + "college-a,home-1,login-1,1001\r\n";
+
+    @Test
+    void testUtf16LittleEndianWithoutByteOrderMark(@TempDir Path directory) throws Exception {
+        // Plain ASCII content, so every other byte is NUL
+        Path path = directory.resolve("canvas.csv");
+        Files.write(path, CSV.getBytes(StandardCharsets.UTF_16LE));
+
+        try(ReaderWithCharset readerWithCharset = FileUtilities.getReaderWithCharsetDetection(path)) {
+            assertEquals(StandardCharsets.UTF_16LE, readerWithCharset.getCharset());
+            assertEquals(
+                "canvasRootAccount,homeSISUserId,canvasLoginId,studentid",
+                new BufferedReader(readerWithCharset.getReader()).readLine());
+        }
+    }
+
+    @Test
+    void testUtf8WithoutByteOrderMark(@TempDir Path directory) throws Exception {
+        Path path = directory.resolve("canvas.csv");
+        Files.write(path, (CSV + "college-a,home-2,josé,1002\r\n").getBytes(StandardCharsets.UTF_8));
+
+        try(ReaderWithCharset readerWithCharset = FileUtilities.getReaderWithCharsetDetection(path)) {
+            assertEquals(StandardCharsets.UTF_8, readerWithCharset.getCharset());
+        }
+    }
+
+}
@@ -0,0 +1,124 @@
+package org.cvcoei.sistools.csv.logins;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.boot.convert.ApplicationConversionService;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.core.env.MapPropertySource;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests reading Colleague input files from a drop directory.
+ */
+public class ColleagueCrossEnrollmentRecordSourceTests {
+
+    private static final String HEADER = "canvasRootAccount,homeSISUserId,canvasLoginId,studentid\r\n";
+
+    @Test
+    void testReadAllInputFiles(@TempDir Path inputDirectory) throws Exception {
+        write(inputDirectory.resolve("canvas_a.csv"), "college-a,home-1,login-1,1001");
+        write(inputDirectory.resolve("canvas_b.csv"), "college-a,home-2,login-2,1002");
+
+        try(AnnotationConfigApplicationContext context = createContext(inputDirectory, 1);
+            Stream<CrossEnrollmentRecord> records = context
+                .getBean(CrossEnrollmentRecordSource.class)
+                .streamRecords()) {
+            assertEquals(Arrays.asList("1001", "1002"), studentIds(records));
+        }
+
+        assertTrue(Files.exists(inputDirectory.resolve("cross-enrollment-completed/canvas_a.csv")));
+        assertTrue(Files.exists(inputDirectory.resolve("cross-enrollment-completed/canvas_b.csv")));
+    }
+
+    @Test
+    void testReadOnlyGivenInputFiles(@TempDir Path inputDirectory) throws Exception {
+        Path settledFile = write(inputDirectory.resolve("canvas_a.csv"), "college-a,home-1,login-1,1001");
+
+        // A file which started arriving after the watcher released the batch
+        Path arrivingFile = write(inputDirectory.resolve("canvas_b.csv"), "college-a,home-2,login-2,1002");
+
+        try(AnnotationConfigApplicationContext context = createContext(inputDirectory, 1);
+            Stream<CrossEnrollmentRecord> records = context
+                .getBean(CrossEnrollmentRecordSource.class)
+                .streamRecords(Collections.singletonList(settledFile))) {
+            assertEquals(Collections.singletonList("1001"), studentIds(records));
+        }
+
+        // The arriving file is left in place for the next batch
+        assertFalse(Files.exists(settledFile));
+        assertTrue(Files.exists(arrivingFile));
+    }
+
+    @Test
+    void testFileWithRejectedLineInSequence(@TempDir Path inputDirectory) throws Exception {
+        assertFileWithRejectedLineMovedToFailed(inputDirectory, 1);
+    }
+
+    @Test
+    void testFileWithRejectedLineInParallel(@TempDir Path inputDirectory) throws Exception {
+        assertFileWithRejectedLineMovedToFailed(inputDirectory, 3);
+    }
+
+    private static void assertFileWithRejectedLineMovedToFailed(Path inputDirectory, int parserThreads)
+            throws Exception {
+        write(inputDirectory.resolve("canvas_a.csv"), "college-a,home-1,login-1,1001");
+
+        // The valid line before the rejected one must not be passed on either
+        write(
+            inputDirectory.resolve("canvas_b.csv"),
+            "college-a,home-2,login-2,1002\r\ncollege-a,home-3,,1003\r\ncollege-a,home-4,login-4,1004");
+        write(inputDirectory.resolve("canvas_c.csv"), "college-a,home-5,login-5,1005");
+
+        try(AnnotationConfigApplicationContext context = createContext(inputDirectory, parserThreads);
+            Stream<CrossEnrollmentRecord> records = context
+                .getBean(CrossEnrollmentRecordSource.class)
+                .streamRecords()) {
+            assertEquals(Arrays.asList("1001", "1005"), studentIds(records));
+        }
+
+        assertTrue(Files.exists(inputDirectory.resolve("cross-enrollment-completed/canvas_a.csv")));
+        assertTrue(Files.exists(inputDirectory.resolve("cross-enrollment-failed/canvas_b.csv")));
+        assertTrue(Files.exists(inputDirectory.resolve("cross-enrollment-completed/canvas_c.csv")));
+    }
+
+    private static List<String> studentIds(Stream<CrossEnrollmentRecord> records) {
+        return records.map(CrossEnrollmentRecord::getTeachingCollegeId).collect(Collectors.toList());
+    }
+
+    private static Path write(Path file, String line) throws Exception {
+        return Files.write(file, (HEADER + line + "\r\n").getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static AnnotationConfigApplicationContext createContext(Path inputDirectory, int parserThreads) {
+        Map<String, Object> properties = new HashMap<>();
+        properties.put("cvc.sis.type", "colleague");
+        properties.put("cvc.cross-enrollment.inputDirectory", inputDirectory.toString());
+        properties.put("cvc.cross-enrollment.inputPattern", "**/canvas*");
+        properties.put("cvc.cross-enrollment.completedDirectory", "cross-enrollment-completed");
+        properties.put("cvc.cross-enrollment.failedDirectory", "cross-enrollment-failed");
+        properties.put("cvc.cross-enrollment.parserThreads", parserThreads);
+        properties.put("cvc.cross-enrollment.charsetSampleSize", 65536);
+
+        AnnotationConfigApplicationContext context = new AnnotationConfigApplicationContext();
+        context.getEnvironment().getPropertySources().addFirst(new MapPropertySource("test", properties));
+        context.getBeanFactory().setConversionService(ApplicationConversionService.getSharedInstance());
+        context.register(ColleagueCrossEnrollmentRecordSource.class);
+        context.refresh();
+        return context;
+    }
+
+}
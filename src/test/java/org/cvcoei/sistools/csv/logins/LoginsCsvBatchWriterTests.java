@@ -0,0 +1,54 @@
+package org.cvcoei.sistools.csv.logins;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Tests writing records into logins.csv files with {@link LoginsCsvBatchWriter}.
+ */
+public class LoginsCsvBatchWriterTests {
+
+    @Test
+    void testRecordWithoutRootAccount(@TempDir Path directory) throws Exception {
+        Path outputPath = directory.resolve("logins.csv");
+
+        try(LoginsCsvBatchWriter writer = new LoginsCsvBatchWriter(
+                outputPath, UploadCompression.fromConfig("none"), 0, false)) {
+            writer.write(new CrossEnrollmentRecord(null, "home-1", "login-1", "1001"));
+            writer.write(new CrossEnrollmentRecord("", "home-2", "login-2", "1002"));
+            writer.write(new CrossEnrollmentRecord("college-a", "home-3", "login-3", "1003"));
+
+            // Only actual root accounts are reported
+            assertEquals(Collections.singleton("college-a"), writer.getBatches().get(0).getRootAccounts());
+        }
+
+        // The missing root account is written as an empty field
+        List<String> lines = Files.readAllLines(outputPath, StandardCharsets.UTF_8);
+        assertEquals(4, lines.size());
+        assertEquals("\"1001\",\"login-1\",\"home-1\",", lines.get(1));
+        assertEquals("\"1002\",\"login-2\",\"home-2\",\"\"", lines.get(2));
+    }
+
+    @Test
+    void testRecordWithoutRootAccountSplitByRootAccount(@TempDir Path directory) throws Exception {
+        try(LoginsCsvBatchWriter writer = new LoginsCsvBatchWriter(
+                directory.resolve("logins.csv"), UploadCompression.fromConfig("none"), 0, true)) {
+            writer.write(new CrossEnrollmentRecord(null, "home-1", "login-1", "1001"));
+            writer.write(new CrossEnrollmentRecord("college-a", "home-2", "login-2", "1002"));
+
+            // The record without a root account goes into a file of its own
+            assertEquals(2, writer.getBatches().size());
+            assertEquals(Collections.emptySet(), writer.getBatches().get(0).getRootAccounts());
+            assertEquals(2, writer.getRecordCount());
+        }
+    }
+
+}
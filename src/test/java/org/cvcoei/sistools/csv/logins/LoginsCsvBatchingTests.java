@@ -0,0 +1,198 @@
+package org.cvcoei.sistools.csv.logins;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import org.cvcoei.sistools.common.canvas.SisImportErrorsService;
+import org.cvcoei.sistools.common.config.HttpClientConfiguration;
+import org.cvcoei.sistools.common.config.MetricsConfiguration;
+import org.cvcoei.sistools.common.expression.ExpressionEvalService;
+import org.cvcoei.sistools.common.http.HttpApiService;
+import org.cvcoei.sistools.common.json.JsonService;
+import org.cvcoei.sistools.common.metrics.MetricsExportService;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.boot.convert.ApplicationConversionService;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.core.env.MapPropertySource;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.TestInstance.Lifecycle.PER_CLASS;
+
+/**
+ * Tests splitting logins.csv into several SIS imports against a local stand-in for the Canvas API.
+ */
+@TestInstance(PER_CLASS)
+public class LoginsCsvBatchingTests {
+
+    private static final String ERRORS_ATTACHMENT = "sis_import_id,file,message,row,row_info\n"
+        + "101,logins.csv,\"Unknown user 1001\",2,\"1001,login-1,home-1,college-a\"\n"
+        + "101,logins.csv,\"Unknown user 1002\",3,\"1002,login-2,home-2,college-a\"\n"
+        + "101,logins.csv,\"Login \"\"login-3\"\" is already taken\",4,\"1003,login-3,home-3,college-b\"\n";
+
+    private final MockWebServer canvas = new MockWebServer();
+
+    private final List<String> uploads = new CopyOnWriteArrayList<>();
+
+    private final AtomicInteger importIds = new AtomicInteger(100);
+
+    private final AtomicInteger uploadsInFlight = new AtomicInteger();
+
+    private final AtomicInteger maxUploadsInFlight = new AtomicInteger();
+
+    @BeforeAll
+    void startCanvas() throws IOException {
+        canvas.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) throws InterruptedException {
+                // Create a new import for each upload, holding the request briefly to overlap uploads
+                if("POST".equals(request.getMethod())) {
+                    maxUploadsInFlight.accumulateAndGet(uploadsInFlight.incrementAndGet(), Math::max);
+                    Thread.sleep(200);
+                    uploads.add(request.getBody().readUtf8());
+                    uploadsInFlight.decrementAndGet();
+
+                    return new MockResponse().setBody(
+                        "{\"id\": " + importIds.incrementAndGet() + ", \"workflow_state\": \"created\"}");
+                }
+
+                // Serve the errors attachment of the first import
+                if(request.getPath().startsWith("/files/")) {
+                    return new MockResponse().setBody(ERRORS_ATTACHMENT);
+                }
+
+                // Every import has finished by the time it is polled, and the first one reports errors
+                String importId = request.getRequestUrl().pathSegments().get(5);
+                if(importId.equals("101")) {
+                    return new MockResponse().setBody("{\"id\": 101, \"workflow_state\": \"imported_with_messages\", "
+                        + "\"errors_attachment\": {\"url\": \"" + canvas.url("/files/errors.csv") + "\"}}");
+                }
+
+                return new MockResponse().setBody("{\"id\": " + importId + ", \"workflow_state\": \"imported\"}");
+            }
+        });
+
+        canvas.start();
+    }
+
+    @AfterAll
+    void stopCanvas() throws IOException {
+        canvas.shutdown();
+    }
+
+    @Test
+    void testImportsAreSplitByRootAccountAndRecordCount(@TempDir Path outputDirectory) throws Exception {
+        List<CrossEnrollmentRecord> records = new ArrayList<>();
+        for(int i = 0; i < 5; i++) {
+            records.add(new CrossEnrollmentRecord("college-a", "home-" + i, "login-" + i, "teach-a-" + i));
+        }
+        for(int i = 0; i < 2; i++) {
+            records.add(new CrossEnrollmentRecord("college-b", "home-" + i, "login-" + i, "teach-b-" + i));
+        }
+
+        Map<String, Object> properties = new HashMap<>();
+        properties.put("cvc.canvas.accountId", "1");
+        properties.put("cvc.canvas.apiToken", "token");
+        properties.put("cvc.canvas.host", canvas.getHostName());
+        properties.put("cvc.canvas.scheme", "http");
+        properties.put("cvc.canvas.port", canvas.getPort());
+        properties.put("cvc.cross-enrollment.outputFile", outputDirectory.resolve("logins.csv").toString());
+        properties.put("cvc.cross-enrollment.uploadMode", "file");
+        properties.put("cvc.cross-enrollment.compression", "none");
+        properties.put("cvc.cross-enrollment.batch.maxRecords", 2);
+        properties.put("cvc.cross-enrollment.batch.byRootAccount", true);
+        properties.put("cvc.cross-enrollment.batch.concurrency", 2);
+        properties.put("cvc.cross-enrollment.dedup.enabled", false);
+        properties.put("cvc.cross-enrollment.dedup.storeFile", outputDirectory.resolve("fingerprints.bin").toString());
+        properties.put("cvc.cross-enrollment.dedup.retentionDays", 90);
+        properties.put("cvc.cross-enrollment.fullResync", false);
+        properties.put("cvc.cross-enrollment.watch.enabled", false);
+        properties.put("cvc.cross-enrollment.watch.quietPeriod", "10s");
+        properties.put("cvc.metrics.enabled", true);
+        properties.put("cvc.metrics.exportFile", outputDirectory.resolve("metrics.prom").toString());
+
+        try(AnnotationConfigApplicationContext context = new AnnotationConfigApplicationContext()) {
+            context.getEnvironment().getPropertySources().addFirst(new MapPropertySource("test", properties));
+            context.getBeanFactory().setConversionService(ApplicationConversionService.getSharedInstance());
+            context.register(
+                HttpClientConfiguration.class,
+                MetricsConfiguration.class,
+                MetricsExportService.class,
+                JsonService.class,
+                ExpressionEvalService.class,
+                HttpApiService.class,
+                SisImportErrorsService.class,
+                LoginsCsvApplication.Runner.class);
+            context.registerBean(CrossEnrollmentRecordSource.class, () -> new CrossEnrollmentRecordSource() {
+                @Override
+                public Stream<CrossEnrollmentRecord> streamRecords() {
+                    return records.stream();
+                }
+            });
+            context.refresh();
+
+            context.getBean(LoginsCsvApplication.Runner.class).run(null);
+
+            // Every record read, file uploaded and import polled is measured
+            MeterRegistry meterRegistry = context.getBean(MeterRegistry.class);
+            assertEquals(records.size(), meterRegistry.get("logins.records.read").counter().count());
+            assertEquals(4, meterRegistry.get("canvas.upload.size").summary().count());
+            assertEquals(4, meterRegistry.get("canvas.import.latency").timers().stream().mapToLong(timer -> timer.count()).sum());
+            assertEquals(4, meterRegistry.get("http.client.polls").counter().count());
+        }
+
+        // College A is split into three files, and college B fits into one
+        assertEquals(4, uploads.size());
+        assertTrue(maxUploadsInFlight.get() <= 2, "At most two uploads should run at the same time");
+
+        int uploadedRecords = 0;
+        for(String upload : uploads) {
+            List<String> lines = Arrays.asList(upload.trim().split("\n"));
+            assertEquals("\"user_id\",\"login_id\",\"existing_user_id\",\"root_account\"", lines.get(0));
+
+            List<String> rows = lines.subList(1, lines.size());
+            assertTrue(rows.size() <= 2);
+            assertEquals(1, rows.stream().map(row -> row.substring(row.lastIndexOf(',') + 1)).distinct().count());
+            uploadedRecords += rows.size();
+        }
+        assertEquals(records.size(), uploadedRecords);
+
+        // Each batch file is archived under its import ID along with its final status
+        try(Stream<Path> files = Files.list(outputDirectory)) {
+            List<String> fileNames = files.map(path -> path.getFileName().toString()).collect(Collectors.toList());
+            assertEquals(4, fileNames.stream().filter(name -> name.matches("logins_\\d+\\.csv")).count());
+            assertEquals(4, fileNames.stream().filter(name -> name.startsWith("canvas_sis_import_status_")).count());
+            assertTrue(fileNames.contains("canvas_sis_import_errors_101.csv.gz"));
+            assertTrue(fileNames.contains("metrics.prom"));
+        }
+
+        // Errors are summarized by error class and root account
+        String errorSummary = new String(
+            Files.readAllBytes(outputDirectory.resolve("canvas_sis_import_errors_101.json")),
+            StandardCharsets.UTF_8);
+        assertTrue(errorSummary.contains("\"totalErrors\": 3"));
+        assertTrue(errorSummary.contains("\"errorClass\": \"Unknown user #\""));
+        assertTrue(errorSummary.contains("\"college-a\": 2"));
+    }
+
+}
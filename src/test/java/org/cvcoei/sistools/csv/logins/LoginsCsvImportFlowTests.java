@@ -0,0 +1,345 @@
+package org.cvcoei.sistools.csv.logins;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import okhttp3.HttpUrl;
+import okhttp3.OkHttpClient;
+import okhttp3.mockwebserver.RecordedRequest;
+import org.cvcoei.sistools.common.canvas.CanvasStandIn;
+import org.cvcoei.sistools.common.canvas.SisImportErrorsService;
+import org.cvcoei.sistools.common.config.HttpClientConfiguration;
+import org.cvcoei.sistools.common.config.MetricsConfiguration;
+import org.cvcoei.sistools.common.expression.ExpressionEvalService;
+import org.cvcoei.sistools.common.io.FingerprintStore;
+import org.cvcoei.sistools.common.http.HttpApiService;
+import org.cvcoei.sistools.common.json.JsonService;
+import org.cvcoei.sistools.common.metrics.MetricsExportService;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.boot.convert.ApplicationConversionService;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.core.env.MapPropertySource;
+import reactor.core.scheduler.Scheduler;
+import reactor.test.scheduler.VirtualTimeScheduler;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests the complete flow of uploading logins.csv, polling the import while Canvas processes it, and fetching
+ * its errors, against a local stand-in for Canvas. Polling runs on virtual time, so the test does not wait
+ * for the backoff between status requests.
+ */
+public class LoginsCsvImportFlowTests {
+
+    private static final String ERRORS_ATTACHMENT = "sis_import_id,file,message,row,row_info\n"
+        + "101,logins.csv,\"Unknown user 1001\",2,\"1001,login-1,home-1,college-a\"\n";
+
+    @Test
+    void testUploadPollAndFetchErrors(@TempDir Path outputDirectory) throws Exception {
+        Map<String, Object> properties = properties(outputDirectory);
+        VirtualTimeScheduler scheduler = VirtualTimeScheduler.create();
+
+        try(CanvasStandIn canvas = new CanvasStandIn(
+                ERRORS_ATTACHMENT,
+                "created", "importing", "importing", "importing", "imported_with_messages");
+            AnnotationConfigApplicationContext context = createContext(canvas, scheduler, properties)) {
+
+            long startNanos = System.nanoTime();
+            CanvasStandIn.runOnVirtualTime(scheduler, context.getBean(OkHttpClient.class), () -> {
+                context.getBean(LoginsCsvApplication.Runner.class).run(null);
+                return null;
+            });
+
+            // The import was followed through every state, its final status was fetched once more for the archive,
+            // and its errors were fetched once
+            assertEquals(1, canvas.getUploads().size());
+            assertEquals(6, canvas.getStatusRequests(101));
+            assertEquals(1, canvas.getErrorDownloads());
+            assertEquals(5.0, context.getBean(MeterRegistry.class).get("http.client.polls").counter().count());
+
+            assertTrue(Files.exists(outputDirectory.resolve("logins_101.csv")));
+            assertTrue(Files.exists(outputDirectory.resolve("canvas_sis_import_errors_101.json")));
+
+            // The archived status holds the final response as Canvas sent it, including fields the program ignores
+            String importStatus = new String(
+                Files.readAllBytes(outputDirectory.resolve("canvas_sis_import_status_101.log")),
+                StandardCharsets.UTF_8);
+            assertTrue(importStatus.contains("\"id\": 101,"));
+            assertTrue(importStatus.contains("\"batch_mode\": false"));
+
+            // Minutes of backoff passed on the virtual clock in a fraction of the time
+            assertTrue(scheduler.now(TimeUnit.SECONDS) >= 6);
+            assertTrue(System.nanoTime() - startNanos < TimeUnit.SECONDS.toNanos(5));
+        }
+        finally {
+            scheduler.dispose();
+        }
+    }
+
+    @Test
+    void testRecordsRejectedByCanvasAreSentAgain(@TempDir Path outputDirectory) throws Exception {
+        Map<String, Object> properties = properties(outputDirectory);
+        properties.put("cvc.cross-enrollment.dedup.enabled", true);
+
+        VirtualTimeScheduler scheduler = VirtualTimeScheduler.create();
+
+        try(CanvasStandIn canvas = new CanvasStandIn(ERRORS_ATTACHMENT, "importing", "imported_with_messages")) {
+            // Run twice, each time with a new context like separate runs of the program
+            for(int run = 0; run < 2; run++) {
+                try(AnnotationConfigApplicationContext context = createContext(canvas, scheduler, properties)) {
+                    CanvasStandIn.runOnVirtualTime(scheduler, context.getBean(OkHttpClient.class), () -> {
+                        context.getBean(LoginsCsvApplication.Runner.class).run(null);
+                        return null;
+                    });
+                }
+            }
+
+            // The record listed in the errors attachment was sent again, and the imported record was not
+            assertEquals(2, canvas.getUploads().size());
+            assertTrue(canvas.getUploads().get(0).contains("\"1001\",\"login-1\",\"home-1\",\"college-a\""));
+            assertTrue(canvas.getUploads().get(0).contains("\"1002\",\"login-2\",\"home-2\",\"college-a\""));
+            assertTrue(canvas.getUploads().get(1).contains("\"1001\",\"login-1\",\"home-1\",\"college-a\""));
+            assertFalse(canvas.getUploads().get(1).contains("\"1002\""));
+        }
+        finally {
+            scheduler.dispose();
+        }
+    }
+
+    @Test
+    void testFullResyncOnlyAppliesToFirstImport(@TempDir Path outputDirectory) throws Exception {
+        Map<String, Object> properties = properties(outputDirectory);
+        properties.put("cvc.cross-enrollment.dedup.enabled", true);
+        properties.put("cvc.cross-enrollment.fullResync", true);
+
+        VirtualTimeScheduler scheduler = VirtualTimeScheduler.create();
+
+        try(CanvasStandIn canvas = new CanvasStandIn(null, "imported");
+            AnnotationConfigApplicationContext context = createContext(canvas, scheduler, properties)) {
+            // Import twice with the same runner, like successive imports in watch mode
+            for(int run = 0; run < 2; run++) {
+                CanvasStandIn.runOnVirtualTime(scheduler, context.getBean(OkHttpClient.class), () -> {
+                    context.getBean(LoginsCsvApplication.Runner.class).run(null);
+                    return null;
+                });
+            }
+
+            // The second import skipped the records sent by the first, and kept their fingerprints
+            assertEquals(1, canvas.getUploads().size());
+            assertEquals(2.0, context.getBean(MeterRegistry.class).get("logins.records.skipped").counter().count());
+            assertEquals(2, FingerprintStore.open(outputDirectory.resolve("fingerprints.bin"), 90).size());
+        }
+        finally {
+            scheduler.dispose();
+        }
+    }
+
+    @Test
+    void testDuplicateRecordsCountedApart(@TempDir Path outputDirectory) throws Exception {
+        Map<String, Object> properties = properties(outputDirectory);
+        properties.put("cvc.cross-enrollment.dedup.enabled", true);
+
+        VirtualTimeScheduler scheduler = VirtualTimeScheduler.create();
+
+        try(CanvasStandIn canvas = new CanvasStandIn(null, "imported");
+            AnnotationConfigApplicationContext context = createContext(
+                canvas,
+                scheduler,
+                properties,
+                new CrossEnrollmentRecord("college-a", "home-1", "login-1", "1001"),
+                new CrossEnrollmentRecord("college-a", "home-1", "login-1", "1001"))) {
+            CanvasStandIn.runOnVirtualTime(scheduler, context.getBean(OkHttpClient.class), () -> {
+                context.getBean(LoginsCsvApplication.Runner.class).run(null);
+                return null;
+            });
+
+            // The record is sent once, and its second copy is not counted as already imported
+            assertEquals(1, canvas.getUploads().size());
+            assertEquals(2, canvas.getUploads().get(0).split("\n").length);
+
+            MeterRegistry meterRegistry = context.getBean(MeterRegistry.class);
+            assertEquals(1.0, meterRegistry.get("logins.records.duplicate").counter().count());
+            assertNull(meterRegistry.find("logins.records.skipped").counter());
+        }
+        finally {
+            scheduler.dispose();
+        }
+    }
+
+    @Test
+    void testWatchModeRequiresSourceWhichReceivesFiles(@TempDir Path outputDirectory) throws Exception {
+        Map<String, Object> properties = properties(outputDirectory);
+        properties.put("cvc.cross-enrollment.watch.enabled", true);
+
+        VirtualTimeScheduler scheduler = VirtualTimeScheduler.create();
+
+        try(CanvasStandIn canvas = new CanvasStandIn(null, "imported");
+            AnnotationConfigApplicationContext context = createContext(canvas, scheduler, properties)) {
+
+            // The source of this test reads no files, so the run fails before uploading anything
+            IllegalStateException exception = assertThrows(
+                IllegalStateException.class,
+                () -> context.getBean(LoginsCsvApplication.Runner.class).run(null));
+            assertTrue(exception.getMessage().contains("cvc.cross-enrollment.watch.enabled"));
+            assertEquals(0, canvas.getUploads().size());
+        }
+        finally {
+            scheduler.dispose();
+        }
+    }
+
+    @Test
+    void testZipUploadInStreamMode(@TempDir Path outputDirectory) throws Exception {
+        assertZipUpload(outputDirectory, "stream");
+    }
+
+    @Test
+    void testZipUploadInFileMode(@TempDir Path outputDirectory) throws Exception {
+        assertZipUpload(outputDirectory, "file");
+    }
+
+    private static void assertZipUpload(Path outputDirectory, String uploadMode) throws Exception {
+        Map<String, Object> properties = properties(outputDirectory);
+        properties.put("cvc.cross-enrollment.uploadMode", uploadMode);
+        properties.put("cvc.cross-enrollment.compression", "zip");
+
+        VirtualTimeScheduler scheduler = VirtualTimeScheduler.create();
+
+        try(CanvasStandIn canvas = new CanvasStandIn(null, "importing", "imported");
+            AnnotationConfigApplicationContext context = createContext(canvas, scheduler, properties)) {
+
+            CanvasStandIn.runOnVirtualTime(scheduler, context.getBean(OkHttpClient.class), () -> {
+                context.getBean(LoginsCsvApplication.Runner.class).run(null);
+                return null;
+            });
+
+            // Canvas is told the upload is a zip archive
+            assertEquals(1, canvas.getUploadRequests().size());
+            RecordedRequest uploadRequest = canvas.getUploadRequests().get(0);
+            HttpUrl uploadUrl = uploadRequest.getRequestUrl();
+            assertEquals("instructure_csv", uploadUrl.queryParameter("import_type"));
+            assertEquals("zip", uploadUrl.queryParameter("extension"));
+            assertEquals("application/zip", uploadRequest.getHeader("Content-Type"));
+
+            // Both the uploaded body and the archived copy hold logins.csv with every record
+            assertZipContents(canvas.getUploadBodies().get(0));
+
+            Path archivedFile = outputDirectory.resolve("logins_101.zip");
+            assertTrue(Files.exists(archivedFile));
+            assertZipContents(Files.readAllBytes(archivedFile));
+        }
+        finally {
+            scheduler.dispose();
+        }
+    }
+
+    private static void assertZipContents(byte[] archive) throws IOException {
+        try(ZipInputStream zipInputStream = new ZipInputStream(new ByteArrayInputStream(archive))) {
+            ZipEntry entry = zipInputStream.getNextEntry();
+            assertNotNull(entry);
+            assertEquals(LoginsCsvApplication.Runner.CSV_ENTRY_NAME, entry.getName());
+
+            String csv = new String(readFully(zipInputStream), StandardCharsets.UTF_8);
+            assertTrue(csv.startsWith("\"user_id\",\"login_id\",\"existing_user_id\",\"root_account\""));
+            assertTrue(csv.contains("\"1001\",\"login-1\",\"home-1\",\"college-a\""));
+            assertTrue(csv.contains("\"1002\",\"login-2\",\"home-2\",\"college-a\""));
+
+            // The archive holds nothing else
+            assertNull(zipInputStream.getNextEntry());
+        }
+    }
+
+    private static byte[] readFully(InputStream inputStream) throws IOException {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int read;
+        while((read = inputStream.read(buffer)) != -1) {
+            outputStream.write(buffer, 0, read);
+        }
+        return outputStream.toByteArray();
+    }
+
+    private static Map<String, Object> properties(Path outputDirectory) {
+        Map<String, Object> properties = new HashMap<>();
+        properties.put("cvc.canvas.accountId", "1");
+        properties.put("cvc.canvas.apiToken", "token");
+        properties.put("cvc.canvas.scheme", "http");
+        properties.put("cvc.cross-enrollment.outputFile", outputDirectory.resolve("logins.csv").toString());
+        properties.put("cvc.cross-enrollment.uploadMode", "stream");
+        properties.put("cvc.cross-enrollment.compression", "none");
+        properties.put("cvc.cross-enrollment.batch.maxRecords", 0);
+        properties.put("cvc.cross-enrollment.batch.byRootAccount", false);
+        properties.put("cvc.cross-enrollment.batch.concurrency", 1);
+        properties.put("cvc.cross-enrollment.dedup.enabled", false);
+        properties.put("cvc.cross-enrollment.dedup.storeFile", outputDirectory.resolve("fingerprints.bin").toString());
+        properties.put("cvc.cross-enrollment.dedup.retentionDays", 90);
+        properties.put("cvc.cross-enrollment.fullResync", false);
+        properties.put("cvc.cross-enrollment.watch.enabled", false);
+        properties.put("cvc.cross-enrollment.watch.quietPeriod", "10s");
+        properties.put("cvc.polling.jitter", 0);
+        return properties;
+    }
+
+    private static AnnotationConfigApplicationContext createContext(
+            CanvasStandIn canvas,
+            Scheduler scheduler,
+            Map<String, Object> properties) {
+        return createContext(
+            canvas,
+            scheduler,
+            properties,
+            new CrossEnrollmentRecord("college-a", "home-1", "login-1", "1001"),
+            new CrossEnrollmentRecord("college-a", "home-2", "login-2", "1002"));
+    }
+
+    private static AnnotationConfigApplicationContext createContext(
+            CanvasStandIn canvas,
+            Scheduler scheduler,
+            Map<String, Object> properties,
+            CrossEnrollmentRecord... records) {
+        Map<String, Object> contextProperties = new HashMap<>(properties);
+        contextProperties.put("cvc.canvas.host", canvas.getHostName());
+        contextProperties.put("cvc.canvas.port", canvas.getPort());
+
+        AnnotationConfigApplicationContext context = new AnnotationConfigApplicationContext();
+        context.getEnvironment().getPropertySources().addFirst(new MapPropertySource("test", contextProperties));
+        context.getBeanFactory().setConversionService(ApplicationConversionService.getSharedInstance());
+        context.register(
+            HttpClientConfiguration.class,
+            MetricsConfiguration.class,
+            MetricsExportService.class,
+            JsonService.class,
+            ExpressionEvalService.class,
+            HttpApiService.class,
+            SisImportErrorsService.class,
+            LoginsCsvApplication.Runner.class);
+        context.registerBean(Scheduler.class, () -> scheduler);
+        context.registerBean(CrossEnrollmentRecordSource.class, () -> new CrossEnrollmentRecordSource() {
+            @Override
+            public Stream<CrossEnrollmentRecord> streamRecords() {
+                return Stream.of(records);
+            }
+        });
+        context.refresh();
+        return context;
+    }
+
+}
@@ -0,0 +1,75 @@
+package org.cvcoei.sistools.csv.logins;
+
+import org.cvcoei.sistools.common.config.TenantEnvironments;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.env.ConfigurableEnvironment;
+import org.springframework.core.env.MapPropertySource;
+import org.springframework.core.env.StandardEnvironment;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests the checks {@link LoginsCsvApplication.TenantRunner} makes on the configuration of tenants before any of
+ * them runs.
+ */
+public class LoginsCsvTenantRunnerTests {
+
+    @Test
+    void testColleagueTenantsInheritingInputDirectory() {
+        Map<String, Object> properties = properties("colleague");
+        properties.put("cvc.tenants.college-b.canvas.accountId", 2);
+
+        IllegalStateException exception = assertThrows(
+            IllegalStateException.class,
+            () -> checkInputDirectories(properties));
+        assertTrue(exception.getMessage().startsWith("Tenants college-a and college-b both read input directory"));
+    }
+
+    @Test
+    void testColleagueTenantsSettingSameInputDirectory() {
+        Map<String, Object> properties = properties("colleague");
+        properties.put("cvc.tenants.college-a.cross-enrollment.inputDirectory", "/data/in/../shared");
+        properties.put("cvc.tenants.college-b.cross-enrollment.inputDirectory", "/data/shared");
+
+        assertThrows(IllegalStateException.class, () -> checkInputDirectories(properties));
+    }
+
+    @Test
+    void testColleagueTenantsWithOwnInputDirectories() {
+        Map<String, Object> properties = properties("colleague");
+        properties.put("cvc.tenants.college-b.cross-enrollment.inputDirectory", "/data/college-b");
+
+        assertDoesNotThrow(() -> checkInputDirectories(properties));
+    }
+
+    @Test
+    void testPeoplesoftTenantsIgnoreInputDirectory() {
+        Map<String, Object> properties = properties("peoplesoft");
+        properties.put("cvc.tenants.college-b.canvas.accountId", 2);
+
+        assertDoesNotThrow(() -> checkInputDirectories(properties));
+    }
+
+    private static void checkInputDirectories(Map<String, Object> properties) {
+        ConfigurableEnvironment environment = new StandardEnvironment();
+        environment.getPropertySources().addFirst(new MapPropertySource("test", properties));
+
+        LoginsCsvApplication.TenantRunner.checkInputDirectories(
+            environment,
+            TenantEnvironments.getTenantNames(environment));
+    }
+
+    private static Map<String, Object> properties(String sisType) {
+        Map<String, Object> properties = new HashMap<>();
+        properties.put("cvc.sis.type", sisType);
+        properties.put("cvc.cross-enrollment.inputDirectory", "/data/in");
+        properties.put("cvc.tenants.college-a.canvas.accountId", 1);
+        return properties;
+    }
+
+}
@@ -0,0 +1,208 @@
+package org.cvcoei.sistools.csv.logins;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.convert.ApplicationConversionService;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.core.env.MapPropertySource;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Tests reading the PeopleSoft staging table in partitions, against an in-memory H2 database standing in for
+ * Oracle. The pool is smaller than the number of partitions, so that partitions have to take turns.
+ */
+public class PeoplesoftCrossEnrollmentRecordSourceTests {
+
+    private static final int ROWS = 3000;
+
+    private static final int POOL_SIZE = 3;
+
+    private static final String SELECT_COLUMNS = "select "
+        + "studentid as \"user_id\", "
+        + "canvasloginid as \"login_id\", "
+        + "homesisuserid as \"existing_user_id\", "
+        + "canvasrootaccount as \"root_account\" "
+        + "from sysadm.ps_cvc_stag_canvas";
+
+    private HikariDataSource dataSource;
+
+    @BeforeEach
+    void createDatabase() {
+        dataSource = new HikariDataSource();
+        dataSource.setJdbcUrl("jdbc:h2:mem:" + UUID.randomUUID() + ";MODE=Oracle;DB_CLOSE_DELAY=-1");
+        dataSource.setUsername("sa");
+        dataSource.setMaximumPoolSize(POOL_SIZE);
+        dataSource.setConnectionTimeout(1000);
+
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.execute("create schema sysadm");
+        jdbcTemplate.execute("create table sysadm.ps_cvc_stag_canvas (studentid number, canvasloginid varchar2(50), "
+            + "homesisuserid varchar2(50), canvasrootaccount varchar2(50), campus varchar2(5))");
+        jdbcTemplate.execute("insert into sysadm.ps_cvc_stag_canvas select x, 'login-' || x, 'home-' || x, "
+            + "'college-a', case when mod(x, 3) = 0 then 'C1' else 'C2' end from system_range(1, " + ROWS + ")");
+    }
+
+    @AfterEach
+    void closeDatabase() {
+        dataSource.close();
+    }
+
+    @Test
+    void testPartitionsByHashReadEveryRecordOnce() throws Exception {
+        Map<String, Object> properties = properties();
+        properties.put("cvc.cross-enrollment.partitions.count", 5);
+
+        try(AnnotationConfigApplicationContext context = createContext(properties);
+            Stream<CrossEnrollmentRecord> records = streamRecords(context)) {
+            List<String> studentIds = records
+                .map(CrossEnrollmentRecord::getTeachingCollegeId)
+                .collect(Collectors.toList());
+
+            assertEquals(ROWS, studentIds.size());
+            assertEquals(ROWS, new HashSet<>(studentIds).size());
+        }
+
+        awaitConnectionsReleased();
+    }
+
+    @Test
+    void testPartitionsByValueOfConfiguredColumn() throws Exception {
+        Map<String, Object> properties = properties();
+        properties.put("cvc.cross-enrollment.partitions.values", "C1, C2");
+        properties.put("cvc.cross-enrollment.partitions.column", "campus");
+
+        try(AnnotationConfigApplicationContext context = createContext(properties);
+            Stream<CrossEnrollmentRecord> records = streamRecords(context)) {
+            Set<String> studentIds = records
+                .map(CrossEnrollmentRecord::getTeachingCollegeId)
+                .collect(Collectors.toSet());
+
+            assertEquals(ROWS, studentIds.size());
+        }
+
+        awaitConnectionsReleased();
+    }
+
+    @Test
+    void testClosingEarlyReleasesConnections() throws Exception {
+        Map<String, Object> properties = properties();
+        properties.put("cvc.cross-enrollment.partitions.count", 5);
+
+        try(AnnotationConfigApplicationContext context = createContext(properties)) {
+            // Stop after a few records, while every partition still has rows left
+            try(Stream<CrossEnrollmentRecord> records = streamRecords(context)) {
+                assertEquals(3, records.limit(3).count());
+            }
+
+            awaitConnectionsReleased();
+        }
+    }
+
+    @Test
+    void testFailedPartitionFailsStream() throws Exception {
+        Map<String, Object> properties = properties();
+        properties.put("cvc.cross-enrollment.partitions.count", 5);
+        properties.put(
+            "cvc.cross-enrollment.sql.peoplesoft-partition-hash",
+            SELECT_COLUMNS + " where nosuch(studentid, ?) = ?");
+
+        try(AnnotationConfigApplicationContext context = createContext(properties)) {
+            assertThrows(RuntimeException.class, () -> {
+                try(Stream<CrossEnrollmentRecord> records = streamRecords(context)) {
+                    records.count();
+                }
+            });
+
+            awaitConnectionsReleased();
+        }
+    }
+
+    @Test
+    void testConnectionsHeldElsewhereLimitPartitions() throws Exception {
+        Map<String, Object> properties = properties();
+        properties.put("cvc.cross-enrollment.partitions.count", 3);
+        properties.put("cvc.sis.fetchSize", 10);
+
+        // Another tenant sharing the pool holds all but one connection
+        try(Connection firstHeld = dataSource.getConnection();
+            Connection secondHeld = dataSource.getConnection();
+            AnnotationConfigApplicationContext context = createContext(properties);
+            Stream<CrossEnrollmentRecord> records = streamRecords(context)) {
+            Iterator<CrossEnrollmentRecord> iterator = records.iterator();
+            iterator.next();
+
+            // Partitions waiting for a connection for this long would time out
+            Thread.sleep(dataSource.getConnectionTimeout() * 3 / 2);
+
+            int count = 1;
+            while(iterator.hasNext()) {
+                iterator.next();
+                count++;
+            }
+
+            assertEquals(ROWS, count);
+        }
+    }
+
+    private static Stream<CrossEnrollmentRecord> streamRecords(AnnotationConfigApplicationContext context)
+            throws Exception {
+        return context.getBean(CrossEnrollmentRecordSource.class).streamRecords();
+    }
+
+    private void awaitConnectionsReleased() throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while(dataSource.getHikariPoolMXBean().getActiveConnections() > 0 && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+
+        assertEquals(0, dataSource.getHikariPoolMXBean().getActiveConnections());
+    }
+
+    private static Map<String, Object> properties() {
+        Map<String, Object> properties = new HashMap<>();
+        properties.put("cvc.sis.type", "peoplesoft");
+        properties.put("cvc.sis.fetchSize", 100);
+        properties.put("cvc.cross-enrollment.sql.peoplesoft", SELECT_COLUMNS);
+        properties.put(
+            "cvc.cross-enrollment.sql.peoplesoft-partition-hash",
+            SELECT_COLUMNS + " where mod(studentid, ?) = ?");
+        properties.put(
+            "cvc.cross-enrollment.sql.peoplesoft-partition-value",
+            SELECT_COLUMNS + " where ${cvc.cross-enrollment.partitions.column} = ?");
+        properties.put("cvc.cross-enrollment.partitions.count", 1);
+        properties.put("cvc.cross-enrollment.partitions.values", "");
+        properties.put("cvc.cross-enrollment.partitions.column", "institution");
+        return properties;
+    }
+
+    private AnnotationConfigApplicationContext createContext(Map<String, Object> properties) {
+        AnnotationConfigApplicationContext context = new AnnotationConfigApplicationContext();
+        context.getEnvironment().getPropertySources().addFirst(new MapPropertySource("test", properties));
+        context.getBeanFactory().setConversionService(ApplicationConversionService.getSharedInstance());
+        context.register(PeoplesoftCrossEnrollmentRecordSource.class);
+
+        // The pool belongs to the test, so the context must not close it
+        context.registerBean(DataSource.class, () -> dataSource, definition -> definition.setDestroyMethodName(""));
+        context.refresh();
+        return context;
+    }
+
+}